@@ -0,0 +1,28 @@
+package com.omnibus.backend.config;
+
+import org.flywaydb.core.Flyway;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.boot.autoconfigure.flyway.FlywayMigrationStrategy;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.DependsOn;
+
+@Configuration
+public class FlywayConfig {
+
+    // Las tablas las crea y actualiza Hibernate (ddl-auto=update). Por eso Flyway no migra antes de JPA,
+    // como haría por defecto, sino después: sus migraciones agregan sobre esas tablas lo que JPA no puede
+    // expresar (por ejemplo, índices únicos parciales).
+    @Bean
+    public FlywayMigrationStrategy flywayMigrationStrategy() {
+        return flyway -> {
+            // No se migra aquí; ver migracionesFlyway()
+        };
+    }
+
+    @Bean
+    @DependsOn("entityManagerFactory")
+    public InitializingBean migracionesFlyway(Flyway flyway) {
+        return flyway::migrate;
+    }
+}
@@ -2,6 +2,7 @@
 package com.omnibus.backend.config;
 
 import com.omnibus.backend.security.JwtRequestFilter;
+import jakarta.servlet.DispatcherType;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -54,6 +55,7 @@ public class SecurityConfig {
         ));
         configuration.setAllowedMethods(Arrays.asList("GET", "POST", "PUT", "DELETE", "OPTIONS", "PATCH"));
         configuration.setAllowedHeaders(List.of("*"));
+        configuration.setExposedHeaders(List.of("ETag"));
         configuration.setAllowCredentials(true);
         UrlBasedCorsConfigurationSource source = new UrlBasedCorsConfigurationSource();
         source.registerCorsConfiguration("/**", configuration);
@@ -68,13 +70,18 @@ public class SecurityConfig {
                 .authorizeHttpRequests(authz -> authz
                         // --- PÚBLICO Y OPCIONES ---
                         .requestMatchers(HttpMethod.OPTIONS, "/**").permitAll() // Preflight CORS
+                        // El despacho asíncrono que cierra una respuesta SSE ya fue autorizado en la solicitud original
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
                         .requestMatchers("/api/auth/register", "/api/auth/login").permitAll()
                         .requestMatchers("/actuator/**").permitAll()
                         .requestMatchers("/api/auth/forgot-password").permitAll()
                         .requestMatchers("/api/auth/reset-password").permitAll()
                         .requestMatchers("/api/paypal/**").permitAll() //PARA PAYPAL
                         .requestMatchers(HttpMethod.GET, "/api/vendedor/localidades-disponibles").permitAll()
+                        .requestMatchers(HttpMethod.GET, "/api/vendedor/localidades/sugerir").permitAll()
                         .requestMatchers(HttpMethod.GET, "/api/vendedor/viajes/buscar-disponibles").permitAll()
+                        .requestMatchers(HttpMethod.GET, "/api/vendedor/viajes/itinerarios").permitAll()
+                        .requestMatchers(HttpMethod.GET, "/api/vendedor/viajes/calendario").permitAll()
                         .requestMatchers(HttpMethod.GET, "/api/vendedor/viajes/listado-precios").permitAll()
 
                         .requestMatchers("/api/vendedor/notificaciones/**").authenticated()
@@ -84,6 +91,8 @@ public class SecurityConfig {
                         .hasAnyRole("CLIENTE", "VENDEDOR", "ADMINISTRADOR")
                         .requestMatchers(HttpMethod.GET, "/api/vendedor/viajes/*/asientos-ocupados")
                         .hasAnyRole("CLIENTE", "VENDEDOR", "ADMINISTRADOR")
+                        .requestMatchers(HttpMethod.GET, "/api/vendedor/viajes/*/asientos/stream")
+                        .hasAnyRole("CLIENTE", "VENDEDOR", "ADMINISTRADOR")
                         .requestMatchers(HttpMethod.POST, "/api/vendedor/pasajes/comprar")
                         .hasAnyRole("CLIENTE", "VENDEDOR", "ADMINISTRADOR")
                         .requestMatchers(HttpMethod.POST, "/api/vendedor/pasajes/comprar-multiple")
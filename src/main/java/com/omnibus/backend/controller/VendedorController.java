@@ -31,18 +31,30 @@ import org.apache.commons.csv.CSVRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import com.omnibus.backend.service.AsyncService;
+import com.omnibus.backend.service.HorarioService;
+import com.omnibus.backend.service.IdempotenciaService;
+import com.omnibus.backend.service.ItinerarioService;
+import com.omnibus.backend.service.TransmisionAsientosService;
 
 import com.omnibus.backend.service.EmailService;
 import org.springframework.context.annotation.Lazy;
 
 import com.omnibus.backend.model.Notificacion;
+import com.omnibus.backend.model.Cliente;
+import com.omnibus.backend.model.TipoCliente;
 import com.omnibus.backend.model.Usuario;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 
@@ -51,8 +63,12 @@ import com.omnibus.backend.repository.NotificacionRepository;
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.YearMonth;
 import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -69,6 +85,10 @@ public class VendedorController {
     private final pasajeService pasajeService;
     private final AsyncService asyncService;
     private final NotificacionRepository notificacionRepository;
+    private final IdempotenciaService idempotenciaService;
+    private final TransmisionAsientosService transmisionAsientosService;
+    private final ItinerarioService itinerarioService;
+    private final HorarioService horarioService;
 
     @Autowired
     public VendedorController(LocalidadService localidadService,
@@ -77,7 +97,11 @@ public class VendedorController {
                               Validator validator,
                               pasajeService pasajeService,
                               AsyncService asyncService,
-                              NotificacionRepository notificacionRepository) {
+                              NotificacionRepository notificacionRepository,
+                              IdempotenciaService idempotenciaService,
+                              TransmisionAsientosService transmisionAsientosService,
+                              ItinerarioService itinerarioService,
+                              HorarioService horarioService) {
         this.localidadService = localidadService;
         this.omnibusService = omnibusService;
         this.viajeService = viajeService;
@@ -85,6 +109,10 @@ public class VendedorController {
         this.pasajeService = pasajeService;
         this.asyncService = asyncService;
         this.notificacionRepository = notificacionRepository;
+        this.idempotenciaService = idempotenciaService;
+        this.transmisionAsientosService = transmisionAsientosService;
+        this.itinerarioService = itinerarioService;
+        this.horarioService = horarioService;
     }
 
     // --- Endpoints de Localidad ---
@@ -173,11 +201,24 @@ public class VendedorController {
         errorDetail.put("error", message);
         errorMessages.add(errorDetail);
     }
+    @GetMapping("/localidades/sugerir")
+    public ResponseEntity<?> sugerirLocalidades(@RequestParam(name = "q", required = false) String consulta,
+                                                @RequestParam(required = false) Integer limite) {
+        try {
+            List<SugerenciaLocalidadDTO> sugerencias = localidadService.sugerirLocalidades(consulta, limite);
+            return ResponseEntity.ok(sugerencias);
+        } catch (Exception e) {
+            logger.error("Error al sugerir localidades para '{}': {}", consulta, e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("message", "Error interno al buscar sugerencias de localidades."));
+        }
+    }
+
     @GetMapping("/localidades-disponibles")
    // @PreAuthorize("hasRole('VENDEDOR') or hasRole('CLIENTE')") // MODIFICADO
-    public ResponseEntity<List<Localidad>> listarTodasLasLocalidadesParaSeleccion() {
+    public ResponseEntity<List<LocalidadDTO>> listarTodasLasLocalidadesParaSeleccion() {
         try {
-            List<Localidad> localidades = localidadService.obtenerTodasLasLocalidades();
+            List<LocalidadDTO> localidades = localidadService.obtenerTodasLasLocalidades();
             return ResponseEntity.ok(localidades);
         } catch (Exception e) {
             logger.error("Error al listar localidades disponibles: {}", e.getMessage(), e);
@@ -293,9 +334,9 @@ public class VendedorController {
     }
     @GetMapping("/omnibusListar")
     @PreAuthorize("hasRole('VENDEDOR')")
-    public ResponseEntity<List<Omnibus>> listarTodosLosOmnibus() {
+    public ResponseEntity<List<OmnibusResponseDTO>> listarTodosLosOmnibus() {
         try {
-            List<Omnibus> omnibusLista = omnibusService.obtenerTodosLosOmnibus();
+            List<OmnibusResponseDTO> omnibusLista = omnibusService.obtenerTodosLosOmnibus();
             return ResponseEntity.ok(omnibusLista);
         } catch (Exception e) {
             logger.error("Error al listar todos los ómnibus: {}", e.getMessage(), e);
@@ -412,6 +453,142 @@ public class VendedorController {
         }
     }
 
+    @PostMapping("/viajes-batch")
+    @PreAuthorize("hasRole('VENDEDOR')")
+    public ResponseEntity<?> altaViajesBatch(@RequestParam("file") MultipartFile file) {
+        if (file.isEmpty()) {
+            return ResponseEntity.badRequest().body(Map.of("message", "El archivo CSV para viajes no puede estar vacío."));
+        }
+        List<Map<String, String>> errorMessages = new ArrayList<>();
+        List<ViajeRequestDTO> solicitudes = new ArrayList<>();
+        List<Integer> filasSolicitudes = new ArrayList<>(); // número de fila de cada solicitud válida
+        int processedDataRows = 0;
+        String[] expectedHeaders = {"fecha", "horasalida", "horallegada", "origenid", "destinoid", "precio"};
+        try (BufferedReader fileReader = new BufferedReader(new InputStreamReader(file.getInputStream(), StandardCharsets.UTF_8));
+             CSVParser csvParser = new CSVParser(fileReader,
+                     CSVFormat.DEFAULT.withFirstRecordAsHeader().withIgnoreHeaderCase().withTrim())) {
+            Map<String, Integer> headerMap = csvParser.getHeaderMap();
+            if (headerMap == null || headerMap.isEmpty()) {
+                return ResponseEntity.badRequest().body(Map.of("message", "El archivo CSV de viajes está vacío o no tiene cabeceras."));
+            }
+            for (String expectedHeader : expectedHeaders) {
+                if (!headerMap.containsKey(expectedHeader)) {
+                    return ResponseEntity.badRequest().body(Map.of("message", "Cabecera faltante en el CSV para viajes: " + expectedHeader));
+                }
+            }
+            for (CSVRecord csvRecord : csvParser) {
+                processedDataRows++;
+                ViajeRequestDTO dto = new ViajeRequestDTO();
+                try {
+                    dto.setFecha(LocalDate.parse(csvRecord.get("fecha")));
+                    dto.setHoraSalida(LocalTime.parse(csvRecord.get("horaSalida")));
+                    dto.setHoraLlegada(LocalTime.parse(csvRecord.get("horaLlegada")));
+                } catch (DateTimeParseException e) {
+                    addViajeError(errorMessages, processedDataRows, "Fecha u hora inválida (formatos: AAAA-MM-DD y HH:mm).");
+                    continue;
+                }
+                try {
+                    dto.setOrigenId(Long.parseLong(csvRecord.get("origenId")));
+                    dto.setDestinoId(Long.parseLong(csvRecord.get("destinoId")));
+                    dto.setPrecio(Double.parseDouble(csvRecord.get("precio")));
+                } catch (NumberFormatException e) {
+                    addViajeError(errorMessages, processedDataRows, "Valor de 'origenId', 'destinoId' o 'precio' no es un número válido.");
+                    continue;
+                }
+                Set<ConstraintViolation<ViajeRequestDTO>> violations = validator.validate(dto);
+                if (!violations.isEmpty()) {
+                    String errorDetails = violations.stream()
+                            .map(v -> v.getPropertyPath() + ": " + v.getMessage())
+                            .collect(Collectors.joining(", "));
+                    addViajeError(errorMessages, processedDataRows, "Error de validación: " + errorDetails);
+                    continue;
+                }
+                solicitudes.add(dto);
+                filasSolicitudes.add(processedDataRows);
+            }
+
+            List<String> successMessages = new ArrayList<>();
+            int busesUtilizados = 0;
+            if (!solicitudes.isEmpty()) {
+                ResultadoLoteViajesDTO resultado = viajeService.crearViajesEnLote(solicitudes);
+                resultado.getCreados().forEach((posicion, viaje) -> successMessages.add("Fila " + filasSolicitudes.get(posicion) +
+                        ": Viaje creado con ID " + viaje.getId() + " (bus " + viaje.getBusMatricula() + ")."));
+                resultado.getRechazados().forEach((posicion, motivo) -> addViajeError(errorMessages, filasSolicitudes.get(posicion), motivo));
+                busesUtilizados = resultado.getBusesUtilizados();
+            }
+            errorMessages.sort(Comparator.comparing(error -> Integer.parseInt(error.get("row"))));
+
+            Map<String, Object> responseBody = new HashMap<>();
+            responseBody.put("totalDataRowsProcessed", processedDataRows);
+            responseBody.put("successfulCreations", successMessages.size());
+            responseBody.put("failedCreations", errorMessages.size());
+            responseBody.put("busesUtilizados", busesUtilizados);
+            responseBody.put("successDetails", successMessages);
+            responseBody.put("failureDetails", errorMessages);
+            if (processedDataRows == 0 && errorMessages.isEmpty()) {
+                responseBody.put("message", "El archivo CSV no contenía filas de datos de viajes para procesar después de las cabeceras.");
+            }
+            return ResponseEntity.ok(responseBody);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Lote de viajes rechazado: {}", e.getMessage());
+            return ResponseEntity.badRequest().body(Map.of("message", e.getMessage()));
+        } catch (Exception e) {
+            logger.error("Error al procesar el archivo CSV de viajes: {}", e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("message", "Error al procesar el archivo CSV de viajes: " + e.getMessage()));
+        }
+    }
+
+    private void addViajeError(List<Map<String, String>> errorMessages, int dataRowNum, String message) {
+        Map<String, String> errorDetail = new HashMap<>();
+        errorDetail.put("row", String.valueOf(dataRowNum));
+        errorDetail.put("error", message);
+        errorMessages.add(errorDetail);
+    }
+
+    // --- Endpoints de Horarios recurrentes ---
+    @PostMapping("/horarios")
+    @PreAuthorize("hasRole('VENDEDOR')")
+    public ResponseEntity<?> altaHorario(@Valid @RequestBody HorarioRequestDTO horarioRequestDTO) {
+        try {
+            HorarioResponseDTO horario = horarioService.crearHorario(horarioRequestDTO);
+            return ResponseEntity.status(HttpStatus.CREATED).body(horario);
+        } catch (EntityNotFoundException e) {
+            logger.warn("No se pudo crear el horario. Entidad no encontrada: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("message", e.getMessage()));
+        } catch (IllegalArgumentException e) {
+            logger.warn("No se pudo crear el horario. Argumento inválido: {}", e.getMessage());
+            return ResponseEntity.badRequest().body(Map.of("message", e.getMessage()));
+        } catch (Exception e) {
+            logger.error("Error interno al crear el horario: {}", e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of("message", "Error interno al crear el horario."));
+        }
+    }
+
+    @GetMapping("/horarios")
+    @PreAuthorize("hasRole('VENDEDOR')")
+    public ResponseEntity<List<HorarioResponseDTO>> listarHorarios() {
+        try {
+            return ResponseEntity.ok(horarioService.listarHorarios());
+        } catch (Exception e) {
+            logger.error("Error al listar los horarios: {}", e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    @PutMapping("/horarios/{horarioId}/desactivar")
+    @PreAuthorize("hasRole('VENDEDOR')")
+    public ResponseEntity<?> desactivarHorario(@PathVariable Long horarioId) {
+        try {
+            return ResponseEntity.ok(horarioService.desactivarHorario(horarioId));
+        } catch (EntityNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("message", e.getMessage()));
+        } catch (Exception e) {
+            logger.error("Error interno al desactivar el horario {}: {}", horarioId, e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of("message", "Error interno al desactivar el horario."));
+        }
+    }
+
     @PostMapping("/viajes/{viajeId}/finalizar")
     @PreAuthorize("hasRole('VENDEDOR')")
     public ResponseEntity<?> finalizarViaje(@PathVariable Integer viajeId) {
@@ -432,6 +609,23 @@ public class VendedorController {
         }
     }
 
+    @GetMapping("/viajes/{viajeId}/candidatos-reasignacion")
+    @PreAuthorize("hasRole('VENDEDOR')")
+    public ResponseEntity<?> obtenerCandidatosReasignacion(@PathVariable Integer viajeId) {
+        try {
+            List<CandidatoReasignacionDTO> candidatos = viajeService.obtenerCandidatosReasignacion(viajeId);
+            return ResponseEntity.ok(candidatos);
+        } catch (EntityNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("message", e.getMessage()));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("message", e.getMessage()));
+        } catch (Exception e) {
+            logger.error("Error interno al buscar candidatos de reasignación para el viaje {}: {}", viajeId, e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("message", "Error interno al buscar ómnibus para la reasignación."));
+        }
+    }
+
     @PutMapping("/viajes/{viajeId}/reasignar")
     @PreAuthorize("hasRole('VENDEDOR')")
     public ResponseEntity<?> reasignarViajeAOmnibus(
@@ -517,6 +711,12 @@ public class VendedorController {
             @Valid @ModelAttribute BusquedaViajesGeneralDTO criteriosBusqueda) {
         try {
             logger.info("Iniciando búsqueda de viajes con disponibilidad. Criterios: {}", criteriosBusqueda);
+            // Con cursor o límite se responde paginado; sin ellos se mantiene la lista completa de siempre.
+            if (criteriosBusqueda.getCursor() != null || criteriosBusqueda.getLimite() != null) {
+                PaginaCursorDTO<ViajeConDisponibilidadDTO> pagina = viajeService.buscarViajesConDisponibilidadPaginado(criteriosBusqueda);
+                logger.info("Página de {} viajes con disponibilidad (hay más: {}).", pagina.getContent().size(), pagina.isHayMas());
+                return ResponseEntity.ok(pagina);
+            }
             List<ViajeConDisponibilidadDTO> viajes = viajeService.buscarViajesConDisponibilidad(criteriosBusqueda);
 
             if (viajes.isEmpty()) {
@@ -537,13 +737,67 @@ public class VendedorController {
     }
 
 
+    @GetMapping("/viajes/calendario")
+    public ResponseEntity<?> obtenerCalendarioRuta(@RequestParam Long origenId,
+                                                   @RequestParam Long destinoId,
+                                                   @RequestParam YearMonth mes,
+                                                   @AuthenticationPrincipal Usuario usuario) {
+        try {
+            // Anónimos y personal ven el precio base; los clientes, el precio con su descuento
+            TipoCliente tipoCliente = usuario instanceof Cliente cliente ? cliente.getTipo() : TipoCliente.COMUN;
+            List<DiaCalendarioDTO> calendario = viajeService.obtenerCalendarioRuta(origenId, destinoId, mes, tipoCliente);
+            return ResponseEntity.ok(calendario);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Parámetros inválidos para el calendario de la ruta: {}", e.getMessage());
+            return ResponseEntity.badRequest().body(Map.of("message", e.getMessage()));
+        } catch (Exception e) {
+            logger.error("Error interno al calcular el calendario de la ruta {} -> {}: {}", origenId, destinoId, e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("message", "Error interno del servidor al calcular el calendario."));
+        }
+    }
+
+    @GetMapping("/viajes/itinerarios")
+    public ResponseEntity<?> buscarItinerarios(
+            @RequestParam Long origenId,
+            @RequestParam Long destinoId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate fecha,
+            @RequestParam(required = false) Integer pasajeros,
+            @RequestParam(required = false) Integer maxTransbordos) {
+        try {
+            logger.info("Buscando itinerarios de {} a {} para el {} (pasajeros: {}, transbordos máx.: {}).",
+                    origenId, destinoId, fecha, pasajeros, maxTransbordos);
+            List<ItinerarioDTO> itinerarios = itinerarioService.buscarItinerarios(origenId, destinoId, fecha, pasajeros, maxTransbordos);
+            logger.info("Encontrados {} itinerarios.", itinerarios.size());
+            return ResponseEntity.ok(itinerarios);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Parámetros inválidos para la búsqueda de itinerarios: {}", e.getMessage());
+            return ResponseEntity.badRequest().body(Map.of("message", e.getMessage()));
+        } catch (IllegalStateException e) {
+            logger.warn("Búsqueda de itinerarios no disponible: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(Map.of("message", e.getMessage()));
+        } catch (Exception e) {
+            logger.error("Error interno al buscar itinerarios: {}", e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("message", "Error interno del servidor al buscar itinerarios."));
+        }
+    }
+
     @GetMapping("/viajes/{viajeId}/detalles-asientos")
     @PreAuthorize("hasRole('VENDEDOR') or hasRole('CLIENTE')") // MODIFICADO
-    public ResponseEntity<?> obtenerDetallesViajeConAsientos(@PathVariable Integer viajeId) {
+    public ResponseEntity<?> obtenerDetallesViajeConAsientos(@PathVariable Integer viajeId, WebRequest webRequest) {
         try {
+            // El ETag se calcula antes de cargar nada: si el cliente ya tiene esta versión, se responde 304 sin ir a la BD.
+            String etag = viajeService.obtenerEtagAsientos(viajeId);
+            if (webRequest.checkNotModified(etag)) {
+                return null;
+            }
             logger.info("Solicitud de detalles y asientos para el viaje ID: {}", viajeId);
             ViajeDetalleConAsientosDTO detalles = viajeService.obtenerDetallesViajeParaSeleccionAsientos(viajeId);
-            return ResponseEntity.ok(detalles);
+            return ResponseEntity.ok()
+                    .eTag(etag)
+                    .cacheControl(CacheControl.noCache())
+                    .body(detalles);
         } catch (EntityNotFoundException e) {
             logger.warn("Viaje no encontrado al obtener detalles y asientos: {}", e.getMessage());
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("message", e.getMessage()));
@@ -596,22 +850,31 @@ public class VendedorController {
 
     @PostMapping("/pasajes/comprar-multiple")
     @PreAuthorize("hasRole('VENDEDOR') or hasRole('CLIENTE')")
-    public ResponseEntity<?> comprarMultiplesPasajes(@Valid @RequestBody CompraMultiplePasajesRequestDTO compraRequestDTO) {
+    public ResponseEntity<?> comprarMultiplesPasajes(@Valid @RequestBody CompraMultiplePasajesRequestDTO compraRequestDTO,
+                                                     @RequestHeader(value = "Idempotency-Key", required = false) String claveIdempotencia) {
         try {
             logger.info("API: Solicitud de compra múltiple: Viaje ID {}, Cliente ID {}, Asientos {}",
                     compraRequestDTO.getViajeId(), compraRequestDTO.getClienteId(), compraRequestDTO.getNumerosAsiento());
 
+            // Con Idempotency-Key, un reintento devuelve la respuesta de la primera ejecución sin repetir la compra.
+            if (claveIdempotencia != null) {
+                IdempotenciaService.Resultado resultado = idempotenciaService.ejecutarCompra(claveIdempotencia, compraRequestDTO,
+                        () -> this.pasajeService.comprarMultiplesPasajes(compraRequestDTO));
+                if (resultado.repetida()) {
+                    logger.info("API: Compra múltiple repetida con Idempotency-Key para el viaje ID {}. Se devuelve la respuesta original.", compraRequestDTO.getViajeId());
+                    return ResponseEntity.status(HttpStatus.CREATED)
+                            .header("Idempotent-Replayed", "true")
+                            .body(resultado.pasajes());
+                }
+                enviarEmailsDePasajes(resultado.pasajes());
+                return ResponseEntity.status(HttpStatus.CREATED).body(resultado.pasajes());
+            }
+
             List<PasajeResponseDTO> pasajesComprados = this.pasajeService.comprarMultiplesPasajes(compraRequestDTO);
             logger.info("API: {} pasajes comprados exitosamente para el viaje ID {}", pasajesComprados.size(), compraRequestDTO.getViajeId());
 
             // Opcional: Enviar email por cada pasaje comprado
-            pasajesComprados.forEach(pasaje -> {
-                try {
-                    asyncService.sendTicketEmailAsync(pasaje);
-                } catch (Exception e) {
-                    logger.error("Error al despachar email para pasaje {}. La compra fue exitosa.", pasaje.getId(), e);
-                }
-            });
+            enviarEmailsDePasajes(pasajesComprados);
 
             return ResponseEntity.status(HttpStatus.CREATED).body(pasajesComprados);
         } catch (EntityNotFoundException e) {
@@ -627,6 +890,16 @@ public class VendedorController {
         }
     }
 
+    private void enviarEmailsDePasajes(List<PasajeResponseDTO> pasajesComprados) {
+        pasajesComprados.forEach(pasaje -> {
+            try {
+                asyncService.sendTicketEmailAsync(pasaje);
+            } catch (Exception e) {
+                logger.error("Error al despachar email para pasaje {}. La compra fue exitosa.", pasaje.getId(), e);
+            }
+        });
+    }
+
 
     @GetMapping("/viajes/{viajeId}/asientos-ocupados")
     @PreAuthorize("hasRole('VENDEDOR') or hasRole('CLIENTE')") // MODIFICADO
@@ -645,6 +918,23 @@ public class VendedorController {
         }
     }
 
+    // Transmisión en vivo (SSE) de los cambios de asientos del viaje. Reemplaza el sondeo de asientos-ocupados.
+    // Los errores se devuelven solo con el código HTTP: un cliente SSE acepta text/event-stream, no JSON.
+    @GetMapping("/viajes/{viajeId}/asientos/stream")
+    @PreAuthorize("hasRole('VENDEDOR') or hasRole('CLIENTE')")
+    public ResponseEntity<SseEmitter> transmitirCambiosDeAsientos(@PathVariable Integer viajeId) {
+        try {
+            logger.info("API: Suscripción SSE a los asientos del viaje ID: {}", viajeId);
+            return ResponseEntity.ok(transmisionAsientosService.suscribir(viajeId));
+        } catch (EntityNotFoundException e) {
+            logger.warn("API: Viaje no encontrado al suscribirse a sus asientos (ID {}): {}", viajeId, e.getMessage());
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        } catch (IllegalStateException e) {
+            logger.warn("API: Suscripción SSE rechazada para el viaje {}: {}", viajeId, e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+    }
+
     @GetMapping("/viajes/{viajeId}/pasajes")
     @PreAuthorize("hasAnyRole('VENDEDOR', 'ADMINISTRADOR')")
     public ResponseEntity<?> listarPasajesDeViaje(
@@ -690,21 +980,32 @@ public class VendedorController {
 
     @GetMapping("/viajes/listado-precios")
     //@PreAuthorize("hasAnyRole('VENDEDOR', 'ADMINISTRADOR')") // Accesible para Vendedores y Admins
-    public ResponseEntity<?> listarViajesConPrecio() {
+    public ResponseEntity<?> listarViajesConPrecio(@RequestParam(required = false) String cursor,
+                                                   @RequestParam(required = false) Integer limite) {
         try {
             logger.info("Solicitud para obtener el listado de todos los viajes con sus precios.");
 
-            List<ViajePrecioDTO> viajesConPrecio = viajeService.listarTodosLosViajesConPrecio();
-
-            if (viajesConPrecio.isEmpty()) {
-                logger.info("No se encontraron viajes para listar.");
-                // Devuelve una lista vacía con estado 200 OK, lo cual es correcto.
-                return ResponseEntity.ok(Collections.emptyList());
+            if (cursor != null || limite != null) {
+                PaginaCursorDTO<ViajePrecioDTO> pagina = viajeService.listarViajesConPrecioPaginado(cursor, limite);
+                logger.info("Página de {} viajes en el listado (hay más: {}).", pagina.getContent().size(), pagina.isHayMas());
+                return ResponseEntity.ok(pagina);
             }
 
-            logger.info("Encontrados {} viajes en el listado.", viajesConPrecio.size());
-            return ResponseEntity.ok(viajesConPrecio);
+            // Sin paginación se envía el listado completo en streaming (mismo arreglo JSON de siempre)
+            StreamingResponseBody cuerpo = salida -> {
+                try {
+                    viajeService.escribirListadoPreciosJson(salida);
+                } catch (Exception e) {
+                    // La respuesta ya empezó a enviarse: solo queda registrar el error y cortar la conexión
+                    logger.error("Error durante el envío en streaming del listado de precios: {}", e.getMessage(), e);
+                    throw e;
+                }
+            };
+            return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(cuerpo);
 
+        } catch (IllegalArgumentException e) {
+            logger.warn("Parámetros de paginación inválidos en el listado de precios: {}", e.getMessage());
+            return ResponseEntity.badRequest().body(Map.of("message", e.getMessage()));
         } catch (Exception e) {
             logger.error("Error interno al listar los viajes con precios: {}", e.getMessage(), e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
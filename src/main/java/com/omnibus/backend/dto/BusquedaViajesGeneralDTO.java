@@ -25,6 +25,11 @@ public class BusquedaViajesGeneralDTO {
     private String sortBy; // Campo por el cual ordenar (ej: "fechaSalida", "origen.nombre", "asientosDisponibles")
     private String sortDir; // Dirección del ordenamiento ("asc" o "desc")
 
+    private String cursor; // Cursor de la página siguiente (devuelto en la página anterior)
+
+    @Min(value = 1, message = "El tamaño de página debe ser al menos 1")
+    private Integer limite; // Tamaño de página; si se omite junto con el cursor, se devuelve la lista completa
+
     // Getters y Setters
 
     public Long getOrigenId() {
@@ -91,6 +96,22 @@ public class BusquedaViajesGeneralDTO {
         this.sortDir = sortDir;
     }
 
+    public String getCursor() {
+        return cursor;
+    }
+
+    public void setCursor(String cursor) {
+        this.cursor = cursor;
+    }
+
+    public Integer getLimite() {
+        return limite;
+    }
+
+    public void setLimite(Integer limite) {
+        this.limite = limite;
+    }
+
     @Override
     public String toString() {
         return "BusquedaViajesGeneralDTO{" +
@@ -102,6 +123,8 @@ public class BusquedaViajesGeneralDTO {
                 ", minAsientosDisponibles=" + minAsientosDisponibles +
                 ", sortBy='" + sortBy + '\'' +
                 ", sortDir='" + sortDir + '\'' +
+                ", cursor='" + cursor + '\'' +
+                ", limite=" + limite +
                 '}';
     }
 }
\ No newline at end of file
@@ -0,0 +1,28 @@
+package com.omnibus.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Cambio en los asientos de un viaje. Se publica como evento de aplicación una vez confirmada
+ * la transacción y se reenvía tal cual a los clientes suscritos por SSE.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CambioAsientosDTO {
+
+    public static final String TIPO_RECLAMADO = "RECLAMADO";     // Asientos reservados o vendidos
+    public static final String TIPO_CONFIRMADO = "CONFIRMADO";   // Reservas que pasaron a VENDIDO
+    public static final String TIPO_LIBERADO = "LIBERADO";       // Devoluciones y reservas expiradas
+    public static final String TIPO_ACTUALIZADO = "ACTUALIZADO"; // Cambió el viaje (bus, estado): recargar el mapa
+    public static final String TIPO_SNAPSHOT = "SNAPSHOT";       // Foto inicial de los asientos ocupados
+
+    private Integer viajeId;
+    private String tipo;
+    private List<Integer> numerosAsiento;
+    private long version; // Versión de los asientos del viaje tras el cambio (la misma que usa el ETag)
+}
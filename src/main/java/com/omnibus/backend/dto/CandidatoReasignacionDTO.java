@@ -0,0 +1,22 @@
+package com.omnibus.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// Ómnibus que puede tomar un viaje en una reasignación, con los datos usados para ordenarlo
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CandidatoReasignacionDTO {
+
+    private Long omnibusId;
+    private String matricula;
+    private Integer capacidadAsientos;
+    private LocalDateTime llegadaViajeAnterior;    // null si no tiene viajes antes
+    private Long minutosOciosoAntes;               // desde su viaje anterior hasta la salida; null si no tiene
+    private LocalDateTime salidaProximoViaje;      // null si no tiene viajes después
+    private boolean requiereReposicionamiento;     // su próximo viaje sale de otra localidad que el destino de este
+}
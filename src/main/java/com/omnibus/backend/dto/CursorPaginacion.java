@@ -0,0 +1,34 @@
+package com.omnibus.backend.dto;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Posición de una página en un listado paginado por cursor (keyset): el valor del campo de
+ * orden y el ID del último elemento entregado. Viaja al cliente como un texto opaco en Base64;
+ * el criterio de orden va incluido para rechazar cursores usados con otro orden.
+ */
+public record CursorPaginacion(String orden, String valor, Integer id) {
+
+    public String codificar() {
+        String texto = orden + "|" + id + "|" + valor;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(texto.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @throws IllegalArgumentException si el cursor está mal formado o se generó con otro orden.
+     */
+    public static CursorPaginacion decodificar(String cursor, String ordenEsperado) {
+        try {
+            String texto = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            // El valor va al final porque puede contener el separador (por ejemplo, en nombres de localidades)
+            String[] partes = texto.split("\\|", 3);
+            if (partes.length == 3 && partes[0].equals(ordenEsperado)) {
+                return new CursorPaginacion(partes[0], partes[2], Integer.valueOf(partes[1]));
+            }
+        } catch (IllegalArgumentException e) {
+            // Base64 o ID inválidos: se informa igual que un cursor de otro orden
+        }
+        throw new IllegalArgumentException("Cursor de paginación inválido o generado con otro criterio de orden.");
+    }
+}
@@ -0,0 +1,27 @@
+package com.omnibus.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+// Resumen de un día en el calendario de una ruta: salidas, asientos libres y precio mínimo
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DiaCalendarioDTO {
+
+    private LocalDate fecha;
+    private long cantidadSalidas;
+    private long asientosLibres;
+    private Double precioMinimo; // null si ese día no hay salidas
+
+    // Constructor usado por la consulta JPQL agregada (COUNT y SUM devuelven Long)
+    public DiaCalendarioDTO(LocalDate fecha, Long cantidadSalidas, Long asientosLibres, Double precioMinimo) {
+        this.fecha = fecha;
+        this.cantidadSalidas = cantidadSalidas != null ? cantidadSalidas : 0;
+        this.asientosLibres = asientosLibres != null ? asientosLibres : 0;
+        this.precioMinimo = precioMinimo;
+    }
+}
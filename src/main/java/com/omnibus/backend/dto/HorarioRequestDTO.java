@@ -0,0 +1,35 @@
+package com.omnibus.backend.dto;
+
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.DayOfWeek;
+import java.time.LocalTime;
+import java.util.Set;
+
+@Data
+@NoArgsConstructor
+public class HorarioRequestDTO {
+
+    @NotNull(message = "El ID de la localidad de origen es obligatorio")
+    private Long origenId;
+
+    @NotNull(message = "El ID de la localidad de destino es obligatorio")
+    private Long destinoId;
+
+    @NotNull(message = "La hora de salida es obligatoria")
+    private LocalTime horaSalida;
+
+    @NotNull(message = "La hora de llegada es obligatoria")
+    private LocalTime horaLlegada;
+
+    @NotEmpty(message = "Debe indicar al menos un día de la semana")
+    private Set<DayOfWeek> diasSemana; // ej. ["MONDAY", "FRIDAY"]
+
+    @NotNull(message = "El precio es obligatorio.")
+    @Positive(message = "El precio debe ser un valor positivo.")
+    private Double precio;
+}
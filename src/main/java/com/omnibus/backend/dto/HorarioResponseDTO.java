@@ -0,0 +1,30 @@
+package com.omnibus.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Set;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class HorarioResponseDTO {
+
+    private Long id;
+    private Long origenId;
+    private String origenNombre;
+    private Long destinoId;
+    private String destinoNombre;
+    private LocalTime horaSalida;
+    private LocalTime horaLlegada;
+    private Set<DayOfWeek> diasSemana;
+    private Double precio;
+    private boolean activo;
+    private LocalDate materializadoHasta;
+}
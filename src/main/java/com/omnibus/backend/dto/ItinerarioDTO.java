@@ -0,0 +1,24 @@
+package com.omnibus.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+// Itinerario de uno o más tramos (con transbordos) entre dos localidades
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ItinerarioDTO {
+
+    private List<ViajeConDisponibilidadDTO> tramos;
+    private int transbordos;
+    private LocalDateTime salida;
+    private LocalDateTime llegada;
+    private long duracionMinutos;
+    private Double precioTotal; // Suma de los precios de los tramos, por pasajero
+    private int asientosDisponibles; // Mínimo de asientos libres entre todos los tramos
+
+}
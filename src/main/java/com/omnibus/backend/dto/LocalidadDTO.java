@@ -0,0 +1,18 @@
+package com.omnibus.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Proyección de Localidad para los listados: misma forma JSON que la entidad
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class LocalidadDTO {
+
+    private Long id;
+    private String nombre;
+    private String departamento;
+    private String direccion;
+
+}
@@ -0,0 +1,36 @@
+package com.omnibus.backend.dto;
+
+import com.omnibus.backend.model.EstadoBus;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// Proyección de Omnibus para el listado de ómnibus: misma forma JSON que la entidad, con la localidad actual anidada
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OmnibusResponseDTO {
+
+    private Long id;
+    private String matricula;
+    private String marca;
+    private String modelo;
+    private Integer capacidadAsientos;
+    private EstadoBus estado;
+    private LocalidadDTO localidadActual;
+    private EstadoBus estadoProgramado;
+    private LocalDateTime inicioInactividadProgramada;
+    private LocalDateTime finInactividadProgramada;
+
+    // Constructor usado por la consulta JPQL de proyección (la localidad llega en columnas planas).
+    public OmnibusResponseDTO(Long id, String matricula, String marca, String modelo, Integer capacidadAsientos,
+                              EstadoBus estado, Long localidadId, String localidadNombre, String localidadDepartamento,
+                              String localidadDireccion, EstadoBus estadoProgramado,
+                              LocalDateTime inicioInactividadProgramada, LocalDateTime finInactividadProgramada) {
+        this(id, matricula, marca, modelo, capacidadAsientos, estado,
+                new LocalidadDTO(localidadId, localidadNombre, localidadDepartamento, localidadDireccion),
+                estadoProgramado, inicioInactividadProgramada, finInactividadProgramada);
+    }
+}
@@ -0,0 +1,22 @@
+package com.omnibus.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Página de un listado paginado por cursor. Para pedir la página siguiente se envía
+ * {@code siguienteCursor} en el parámetro {@code cursor}; es null cuando no hay más resultados.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PaginaCursorDTO<T> {
+
+    private List<T> content;
+    private String siguienteCursor;
+    private boolean hayMas;
+
+}
@@ -51,6 +51,26 @@ public class PasajeResponseDTO {
         this.fechaReserva = fechaReserva; // <-- Asignación añadida
     }
 
+    // Constructor usado por las consultas JPQL de proyección. Aplica los mismos textos por defecto
+    // que la conversión desde la entidad en PasajeService.
+    public PasajeResponseDTO(Integer id, Long clienteId, String clienteNombre, String clienteApellido, String clienteEmail,
+                             Integer viajeId, String origenViaje, String destinoViaje,
+                             LocalDateTime fechaHoraSalidaViaje, String omnibusMatricula,
+                             Double precio, EstadoPasaje estado, Integer numeroAsiento,
+                             LocalDateTime fechaReserva) {
+        this(id, clienteId,
+                clienteNombre == null ? "Nombre no disponible"
+                        : (clienteApellido == null || clienteApellido.isBlank() ? clienteNombre : clienteNombre + " " + clienteApellido),
+                clienteEmail != null ? clienteEmail : "Email no disponible",
+                viajeId,
+                origenViaje != null ? origenViaje : "Origen no especificado",
+                destinoViaje != null ? destinoViaje : "Destino no especificado",
+                fechaHoraSalidaViaje != null ? fechaHoraSalidaViaje.toLocalDate() : null,
+                fechaHoraSalidaViaje != null ? fechaHoraSalidaViaje.toLocalTime() : null,
+                omnibusMatricula != null ? omnibusMatricula : "Matrícula no especificada",
+                precio, estado, numeroAsiento, fechaReserva);
+    }
+
     // --- Getters y Setters ---
     public Integer getId() { return id; }
     public void setId(Integer id) { this.id = id; }
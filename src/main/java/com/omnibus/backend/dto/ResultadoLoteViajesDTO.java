@@ -0,0 +1,17 @@
+package com.omnibus.backend.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+// Resultado de la carga de viajes en lote; las claves son la posición de cada solicitud en el lote
+@Data
+@NoArgsConstructor
+public class ResultadoLoteViajesDTO {
+
+    private Map<Integer, ViajeResponseDTO> creados = new TreeMap<>();
+    private Map<Integer, String> rechazados = new TreeMap<>();
+    private int busesUtilizados;
+}
@@ -0,0 +1,17 @@
+package com.omnibus.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Respuesta mínima del autocompletado de localidades
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SugerenciaLocalidadDTO {
+
+    private Long id;
+    private String nombre;
+    private String departamento;
+
+}
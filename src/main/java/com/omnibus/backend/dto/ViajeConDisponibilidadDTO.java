@@ -35,6 +35,11 @@ public class ViajeConDisponibilidadDTO {
         this.precio = precio;
     }
 
+    // Constructor usado por la búsqueda JPQL (los asientos ocupados llegan como Long).
+    public ViajeConDisponibilidadDTO(Integer id, LocalDateTime fechaSalida, LocalDateTime fechaLlegada, String origenNombre, String destinoNombre, String omnibusMatricula, Integer capacidadOmnibus, Long asientosVendidos, EstadoViaje estado, Double precio) {
+        this(id, fechaSalida, fechaLlegada, origenNombre, destinoNombre, omnibusMatricula, capacidadOmnibus, asientosVendidos.intValue(), estado, precio);
+    }
+
 
     public Integer getId() {
         return id;
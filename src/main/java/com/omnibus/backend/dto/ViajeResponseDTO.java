@@ -7,7 +7,10 @@ import lombok.Setter; // Aunque con @Builder, los setters no son estrictamente n
 import lombok.AllArgsConstructor; // Útil con @Builder
 import lombok.NoArgsConstructor;  // Útil con @Builder
 
+import com.omnibus.backend.model.EstadoViaje;
+
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.LocalTime;
 
 @Getter
@@ -33,4 +36,24 @@ public class ViajeResponseDTO {
     private Double precio;
 
     // private Integer capacidadTotal; // Opcional, si quieres mostrarla
+
+    // Constructor usado por las consultas JPQL de proyección: fecha y horas se derivan igual que en Viaje.
+    public ViajeResponseDTO(Integer id, LocalDateTime fechaHoraSalida, LocalDateTime fechaHoraLlegada,
+                            Long origenId, String origenNombre, Long destinoId, String destinoNombre,
+                            Long busAsignadoId, String busMatricula, Integer asientosDisponibles,
+                            EstadoViaje estado, Double precio) {
+        this.id = id;
+        this.fecha = fechaHoraSalida != null ? fechaHoraSalida.toLocalDate() : null;
+        this.horaSalida = fechaHoraSalida != null ? fechaHoraSalida.toLocalTime() : null;
+        this.horaLlegada = fechaHoraLlegada != null ? fechaHoraLlegada.toLocalTime() : null;
+        this.origenId = origenId;
+        this.origenNombre = origenNombre;
+        this.destinoId = destinoId;
+        this.destinoNombre = destinoNombre;
+        this.busAsignadoId = busAsignadoId;
+        this.busMatricula = busMatricula != null ? busMatricula : "N/A";
+        this.asientosDisponibles = asientosDisponibles;
+        this.estado = estado != null ? estado.name() : null;
+        this.precio = precio;
+    }
 }
\ No newline at end of file
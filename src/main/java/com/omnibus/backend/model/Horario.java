@@ -0,0 +1,94 @@
+package com.omnibus.backend.model;
+
+import jakarta.persistence.*;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Salida recurrente de una ruta: los días de la semana indicados, a la misma hora y con el mismo precio.
+ * MaterializadorHorariosService genera a partir de él los viajes de los próximos días.
+ */
+@Entity
+@Table(name = "horario")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class Horario {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @NotNull(message = "La localidad de origen no puede ser nula.")
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "origen_id", nullable = false)
+    private Localidad origen;
+
+    @NotNull(message = "La localidad de destino no puede ser nula.")
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "destino_id", nullable = false)
+    private Localidad destino;
+
+    @NotNull(message = "La hora de salida no puede ser nula.")
+    @Column(name = "hora_salida", nullable = false)
+    private LocalTime horaSalida;
+
+    @NotNull(message = "La hora de llegada no puede ser nula.")
+    @Column(name = "hora_llegada", nullable = false)
+    private LocalTime horaLlegada;
+
+    // Un bit por día: lunes = 1, martes = 2, miércoles = 4, ... domingo = 64
+    @Min(value = 1, message = "El horario debe tener al menos un día de la semana.")
+    @Max(value = 127, message = "Máscara de días de la semana inválida.")
+    @Column(name = "dias_semana", nullable = false)
+    private int diasSemana;
+
+    @NotNull(message = "El precio no puede ser nulo.")
+    @Positive(message = "El precio debe ser un valor positivo.")
+    @Column(nullable = false)
+    private Double precio;
+
+    @Column(nullable = false)
+    private boolean activo;
+
+    // Último día para el que ya se generaron los viajes; null si todavía no se generó ninguno
+    @Column(name = "materializado_hasta")
+    private LocalDate materializadoHasta;
+
+    public boolean saleEl(DayOfWeek dia) {
+        return (diasSemana & mascara(dia)) != 0;
+    }
+
+    public static int mascara(Set<DayOfWeek> dias) {
+        return dias.stream().mapToInt(Horario::mascara).reduce(0, (a, b) -> a | b);
+    }
+
+    public static Set<DayOfWeek> dias(int mascara) {
+        Set<DayOfWeek> dias = EnumSet.noneOf(DayOfWeek.class);
+        for (DayOfWeek dia : DayOfWeek.values()) {
+            if ((mascara & mascara(dia)) != 0) {
+                dias.add(dia);
+            }
+        }
+        return dias;
+    }
+
+    private static int mascara(DayOfWeek dia) {
+        return 1 << (dia.getValue() - 1);
+    }
+}
@@ -0,0 +1,35 @@
+package com.omnibus.backend.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.time.LocalDateTime;
+
+/**
+ * Respuesta guardada de una compra identificada con la cabecera Idempotency-Key.
+ * Permite devolver el mismo resultado si el cliente reintenta la solicitud,
+ * incluso después de un reinicio del servidor.
+ */
+@Entity
+@Table(name = "registro_idempotencia")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class RegistroIdempotencia {
+
+    @Id
+    @Column(length = 150)
+    private String clave; // "<clienteId>:<Idempotency-Key>"
+
+    @Column(name = "huella_solicitud", nullable = false, length = 255)
+    private String huellaSolicitud; // Identifica el contenido de la solicitud original
+
+    @Column(name = "respuesta_json", nullable = false, columnDefinition = "TEXT")
+    private String respuestaJson;
+
+    @Column(name = "fecha_creacion", nullable = false)
+    private LocalDateTime fechaCreacion;
+}
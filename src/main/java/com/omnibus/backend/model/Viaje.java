@@ -51,6 +51,11 @@ public class Viaje {
     @JoinColumn(name = "bus_asignado_id", nullable = false)
     private Omnibus busAsignado;
 
+    // Horario recurrente que generó el viaje; null si se creó a mano
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "horario_id")
+    private Horario horario;
+
     @NotNull(message = "Los asientos disponibles no pueden ser nulos.")
     @Min(value = 0, message = "Los asientos disponibles no pueden ser negativos.")
     @Column(nullable = false)
@@ -0,0 +1,22 @@
+package com.omnibus.backend.repository;
+
+import com.omnibus.backend.model.Horario;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Repository
+public interface HorarioRepository extends JpaRepository<Horario, Long> {
+
+    @Query("SELECT h FROM Horario h JOIN FETCH h.origen JOIN FETCH h.destino ORDER BY h.id")
+    List<Horario> findAllConLocalidades();
+
+    // Horarios activos con viajes por generar hasta la fecha indicada
+    @Query("SELECT h FROM Horario h JOIN FETCH h.origen JOIN FETCH h.destino WHERE h.activo = true " +
+            "AND (h.materializadoHasta IS NULL OR h.materializadoHasta < :hasta) ORDER BY h.id")
+    List<Horario> findPendientesDeMaterializar(@Param("hasta") LocalDate hasta);
+}
@@ -1,14 +1,22 @@
 package com.omnibus.backend.repository;
 
+import com.omnibus.backend.dto.LocalidadDTO;
 import com.omnibus.backend.model.Localidad;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface LocalidadRepository extends JpaRepository<Localidad, Long> {
     Optional<Localidad> findByNombre(String nombre);
+
+    // Proyección para el listado de localidades: una sola consulta y sin entidades administradas
+    @Query("SELECT new com.omnibus.backend.dto.LocalidadDTO(l.id, l.nombre, l.departamento, l.direccion) " +
+            "FROM Localidad l ORDER BY l.id")
+    List<LocalidadDTO> findAllResponse();
     // Opcional: para buscar por nombre y departamento
     // Optional<Localidad> findByNombreAndDepartamento(String nombre, String departamento);
 }
\ No newline at end of file
@@ -1,9 +1,12 @@
 // src/main/java/com/omnibus/backend/repository/OmnibusRepository.java
 package com.omnibus.backend.repository;
 
+import com.omnibus.backend.dto.OmnibusResponseDTO;
 import com.omnibus.backend.model.EstadoBus; // Asegúrate de importar
 import com.omnibus.backend.model.Omnibus;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
@@ -17,9 +20,23 @@ public interface OmnibusRepository extends JpaRepository<Omnibus, Long> {
     // NUEVO MÉTODO
     List<Omnibus> findByEstado(EstadoBus estado);
 
+    // Igual que findByEstado, pero trae la localidad actual en la misma consulta
+    @Query("SELECT o FROM Omnibus o JOIN FETCH o.localidadActual WHERE o.estado = :estado")
+    List<Omnibus> findByEstadoConLocalidad(@Param("estado") EstadoBus estado);
+
+    @Query("SELECT o FROM Omnibus o JOIN FETCH o.localidadActual WHERE o.estado IN :estados")
+    List<Omnibus> findByEstadoInConLocalidad(@Param("estados") List<EstadoBus> estados);
+
     List<Omnibus> findByEstadoAndInicioInactividadProgramadaBefore(EstadoBus estado, LocalDateTime ahora);
 
     // Busca buses INACTIVOS (en mantenimiento o fuera de servicio) cuya hora de fin de inactividad ya pasó
     List<Omnibus> findByEstadoInAndFinInactividadProgramadaBefore(List<EstadoBus> estados, LocalDateTime ahora);
 
+    // Proyección para el listado de ómnibus: la localidad actual se trae en la misma consulta (sin cargas LAZY por fila)
+    @Query("SELECT new com.omnibus.backend.dto.OmnibusResponseDTO(o.id, o.matricula, o.marca, o.modelo, " +
+            "o.capacidadAsientos, o.estado, l.id, l.nombre, l.departamento, l.direccion, o.estadoProgramado, " +
+            "o.inicioInactividadProgramada, o.finInactividadProgramada) " +
+            "FROM Omnibus o JOIN o.localidadActual l ORDER BY o.id")
+    List<OmnibusResponseDTO> findAllResponse();
+
 }
\ No newline at end of file
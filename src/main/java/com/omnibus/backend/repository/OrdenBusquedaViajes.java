@@ -0,0 +1,104 @@
+package com.omnibus.backend.repository;
+
+import com.omnibus.backend.dto.ViajeConDisponibilidadDTO;
+
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.function.Function;
+
+/**
+ * Criterios de orden de la búsqueda de viajes con disponibilidad. Reúne en un solo lugar la
+ * expresión JPQL de cada criterio y su equivalente en memoria, para que la consulta en BD,
+ * el índice de rutas y la paginación por cursor ordenen exactamente igual (siempre con el ID
+ * como desempate).
+ */
+public enum OrdenBusquedaViajes {
+
+    FECHA_SALIDA("v.fechaHoraSalida", ViajeConDisponibilidadDTO::getFechaSalida, LocalDateTime::parse),
+    // Orden por código de carácter (ucs_basic) y no por la collation de la BD: es el mismo que el de
+    // String.compareTo en el índice y en el cursor, sea cual sea la configuración regional del servidor
+    ORIGEN_NOMBRE("collate(LOWER(o.nombre) as ucs_basic)", v -> v.getOrigenNombre().toLowerCase(Locale.ROOT), valor -> valor),
+    DESTINO_NOMBRE("collate(LOWER(d.nombre) as ucs_basic)", v -> v.getDestinoNombre().toLowerCase(Locale.ROOT), valor -> valor),
+    // El contador del viaje, el mismo que usa el índice de rutas
+    ASIENTOS_DISPONIBLES("v.asientosDisponibles", ViajeConDisponibilidadDTO::getAsientosDisponibles, Integer::valueOf),
+    PRECIO("v.precio", ViajeConDisponibilidadDTO::getPrecio, Double::valueOf);
+
+    private final String expresionJpql;
+    private final Function<ViajeConDisponibilidadDTO, Comparable<?>> clave;
+    private final Function<String, Comparable<?>> lectorValor;
+
+    OrdenBusquedaViajes(String expresionJpql,
+                        Function<ViajeConDisponibilidadDTO, Comparable<?>> clave,
+                        Function<String, Comparable<?>> lectorValor) {
+        this.expresionJpql = expresionJpql;
+        this.clave = clave;
+        this.lectorValor = lectorValor;
+    }
+
+    /**
+     * Traduce el parámetro sortBy de la búsqueda. Si no se indica o no se reconoce, se ordena por fecha de salida.
+     */
+    public static OrdenBusquedaViajes desde(String sortBy) {
+        switch (sortBy != null ? sortBy.toLowerCase() : "fechasalida") {
+            case "origennombre":
+                return ORIGEN_NOMBRE;
+            case "destinonombre":
+                return DESTINO_NOMBRE;
+            case "asientosdisponibles":
+                return ASIENTOS_DISPONIBLES;
+            case "precio":
+                return PRECIO;
+            case "fechasalida":
+            default:
+                return FECHA_SALIDA;
+        }
+    }
+
+    public static boolean esDescendente(String sortDir) {
+        return sortDir != null && "desc".equalsIgnoreCase(sortDir);
+    }
+
+    public String getExpresionJpql() {
+        return expresionJpql;
+    }
+
+    public Comparator<ViajeConDisponibilidadDTO> comparador(boolean descendente) {
+        Comparator<ViajeConDisponibilidadDTO> comparador = (a, b) -> comparar(clave.apply(a), clave.apply(b));
+        comparador = comparador.thenComparing(ViajeConDisponibilidadDTO::getId);
+        return descendente ? comparador.reversed() : comparador;
+    }
+
+    /** Valor del criterio de orden para un viaje, tal como se guarda en el cursor. */
+    public String valorCursor(ViajeConDisponibilidadDTO viaje) {
+        return String.valueOf(clave.apply(viaje));
+    }
+
+    /**
+     * Convierte el valor guardado en el cursor al tipo que se compara en la consulta.
+     * @throws IllegalArgumentException si el valor no corresponde a este criterio.
+     */
+    public Comparable<?> leerValorCursor(String valor) {
+        try {
+            return lectorValor.apply(valor);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Cursor de paginación inválido.");
+        }
+    }
+
+    /**
+     * Indica si el viaje va después de la posición (valor, id) del cursor en el orden pedido.
+     */
+    public boolean posteriorA(ViajeConDisponibilidadDTO viaje, Comparable<?> valorCursor, Integer idCursor, boolean descendente) {
+        int comparacion = comparar(clave.apply(viaje), valorCursor);
+        if (comparacion == 0) {
+            comparacion = viaje.getId().compareTo(idCursor);
+        }
+        return descendente ? comparacion < 0 : comparacion > 0;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static int comparar(Comparable a, Comparable b) {
+        return a.compareTo(b);
+    }
+}
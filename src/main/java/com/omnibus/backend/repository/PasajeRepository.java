@@ -1,14 +1,21 @@
 // src/main/java/com/omnibus/backend/repository/PasajeRepository.java
 package com.omnibus.backend.repository;
 
+import com.omnibus.backend.dto.PasajeResponseDTO;
 import com.omnibus.backend.model.EstadoPasaje;
 import com.omnibus.backend.model.Pasaje;
 import com.omnibus.backend.model.Usuario;
 import com.omnibus.backend.model.Viaje;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -29,6 +36,23 @@ public interface PasajeRepository extends JpaRepository<Pasaje, Integer> {
 
     List<Pasaje> findByEstadoAndFechaReservaBefore(EstadoPasaje estado, LocalDateTime fecha);
 
+    // --- PROYECCIONES PARA ENDPOINTS DE LECTURA (una consulta, sin inicializar proxies) ---
+
+    String PROYECCION_PASAJE_RESPONSE = "SELECT new com.omnibus.backend.dto.PasajeResponseDTO(" +
+            "p.id, c.id, c.nombre, c.apellido, c.email, v.id, o.nombre, d.nombre, v.fechaHoraSalida, " +
+            "b.matricula, p.precio, p.estado, p.numeroAsiento, p.fechaReserva) " +
+            "FROM Pasaje p JOIN p.cliente c JOIN p.datosViaje v JOIN v.origen o JOIN v.destino d " +
+            "LEFT JOIN v.busAsignado b ";
+
+    @Query(PROYECCION_PASAJE_RESPONSE + "WHERE c.id = :clienteId")
+    List<PasajeResponseDTO> findResponseByClienteId(@Param("clienteId") Long clienteId);
+
+    @Query(PROYECCION_PASAJE_RESPONSE + "WHERE v.id = :viajeId")
+    List<PasajeResponseDTO> findResponseByViajeId(@Param("viajeId") Integer viajeId);
+
+    @Query(PROYECCION_PASAJE_RESPONSE + "WHERE p.id = :pasajeId")
+    Optional<PasajeResponseDTO> findResponseById(@Param("pasajeId") Integer pasajeId);
+
 
     // --- MÉTODO ANTIGUO ELIMINADO ---
     // Optional<Pasaje> findByDatosViajeAndNumeroAsiento(Viaje viaje, Integer numeroAsiento);
@@ -61,6 +85,33 @@ public interface PasajeRepository extends JpaRepository<Pasaje, Integer> {
      */
     Optional<Pasaje> findByDatosViajeAndNumeroAsientoAndEstado(Viaje viaje, Integer numeroAsiento, EstadoPasaje estado);
 
+    /**
+     * Variante de {@link #findByDatosViajeAndNumeroAsientoAndEstadoIn} para varios asientos a la vez:
+     * devuelve en una sola consulta los pasajes activos que ocupan alguno de los asientos indicados.
+     *
+     * @param viaje El viaje en el que se busca.
+     * @param numerosAsiento Los números de asiento a verificar.
+     * @param estados Los estados a considerar como "ocupado" (ej. [VENDIDO, RESERVADO]).
+     * @return Los pasajes que ocupan alguno de esos asientos; vacía si todos están libres.
+     */
+    List<Pasaje> findByDatosViajeAndNumeroAsientoInAndEstadoIn(Viaje viaje, Collection<Integer> numerosAsiento, Collection<EstadoPasaje> estados);
+
+    /**
+     * Busca y bloquea (SELECT ... FOR UPDATE) en una sola consulta los pasajes de los asientos indicados
+     * que tengan el estado dado. Se usa al confirmar reservas para que la limpieza de reservas expiradas
+     * no pueda borrarlas mientras se confirman.
+     *
+     * @param viaje El viaje en el que se busca.
+     * @param numerosAsiento Los números de asiento.
+     * @param estado El estado exacto que deben tener los pasajes (ej. RESERVADO).
+     * @return Los pasajes encontrados, ya bloqueados hasta el final de la transacción.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT p FROM Pasaje p WHERE p.datosViaje = :viaje AND p.numeroAsiento IN :numerosAsiento AND p.estado = :estado")
+    List<Pasaje> findParaActualizarByDatosViajeAndNumeroAsientoInAndEstado(@Param("viaje") Viaje viaje,
+                                                                         @Param("numerosAsiento") Collection<Integer> numerosAsiento,
+                                                                         @Param("estado") EstadoPasaje estado);
+
     // --- MÉTODO NUEVO QUE DEBES AÑADIR ---
     /**
      * Cuenta la cantidad de pasajes para un viaje y cliente específicos que están en un estado determinado.
@@ -73,4 +124,54 @@ public interface PasajeRepository extends JpaRepository<Pasaje, Integer> {
     long countByDatosViajeAndClienteAndEstado(Viaje viaje, Usuario cliente, EstadoPasaje estado);
 
     List<Pasaje> findByDatosViajeAndEstado(Viaje viaje, EstadoPasaje estado);
+
+    /**
+     * Devuelve en una sola consulta los pasajes del viaje en el estado indicado, con el cliente y el viaje
+     * (origen y destino) ya cargados, para poder usarlos fuera de la transacción.
+     * Lo usa el envío de avisos al cerrar las ventas de un viaje.
+     */
+    @Query("SELECT p FROM Pasaje p JOIN FETCH p.cliente JOIN FETCH p.datosViaje v JOIN FETCH v.origen JOIN FETCH v.destino " +
+            "WHERE v.id = :viajeId AND p.estado = :estado")
+    List<Pasaje> findConClienteYViajeByViajeIdAndEstado(@Param("viajeId") Integer viajeId, @Param("estado") EstadoPasaje estado);
+
+    /**
+     * Devuelve solo los números de asiento de los pasajes de un viaje en los estados indicados.
+     * Lo usa el inventario de asientos en memoria para cargar su mapa sin materializar entidades.
+     */
+    @Query("SELECT p.numeroAsiento FROM Pasaje p WHERE p.datosViaje.id = :viajeId AND p.estado IN :estados")
+    List<Integer> findNumerosAsientoByViajeIdAndEstadoIn(@Param("viajeId") Integer viajeId,
+                                                         @Param("estados") Collection<EstadoPasaje> estados);
+
+    /**
+     * Devuelve pares [id, fechaReserva] de los pasajes en el estado indicado, sin cargar entidades.
+     * Se usa para reconstruir la cola de expiración de reservas al arrancar.
+     */
+    @Query("SELECT p.id, p.fechaReserva FROM Pasaje p WHERE p.estado = :estado")
+    List<Object[]> findIdYFechaReservaByEstado(@Param("estado") EstadoPasaje estado);
+
+    /**
+     * Elimina en una sola sentencia las reservas indicadas que sigan en estado RESERVADO y cuya
+     * fecha de reserva sea anterior o igual al límite. Las que ya se compraron se ignoran.
+     * @return pares [viaje_id, numero_asiento] de los pasajes efectivamente eliminados.
+     */
+    @Transactional
+    @Query(nativeQuery = true, value = "DELETE FROM pasajes WHERE id IN (:ids) AND estado = 'RESERVADO' " +
+            "AND fecha_reserva <= :limite RETURNING viaje_id, numero_asiento")
+    List<Object[]> eliminarReservasExpiradasPorIds(@Param("ids") Collection<Integer> ids,
+                                                   @Param("limite") LocalDateTime limite);
+
+    /**
+     * Elimina un lote de como mucho {@code lote} reservas RESERVADO con fecha de reserva anterior al límite.
+     * Lo usa el barrido periódico para acotar el tamaño de cada transacción.
+     * @return pares [viaje_id, numero_asiento] de los pasajes eliminados.
+     */
+    @Transactional
+    // El filtro se repite afuera: si una reserva se confirma después de que la subconsulta la eligió,
+    // PostgreSQL vuelve a evaluar solo el WHERE exterior y así no se borra el pasaje ya VENDIDO.
+    // SKIP LOCKED saltea las reservas que otra transacción está confirmando en ese momento.
+    @Query(nativeQuery = true, value = "DELETE FROM pasajes WHERE id IN (SELECT id FROM pasajes " +
+            "WHERE estado = 'RESERVADO' AND fecha_reserva < :limite ORDER BY id LIMIT :lote FOR UPDATE SKIP LOCKED) " +
+            "AND estado = 'RESERVADO' AND fecha_reserva < :limite " +
+            "RETURNING viaje_id, numero_asiento")
+    List<Object[]> eliminarLoteReservasExpiradas(@Param("limite") LocalDateTime limite, @Param("lote") int lote);
 }
\ No newline at end of file
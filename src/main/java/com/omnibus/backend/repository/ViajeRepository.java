@@ -1,22 +1,101 @@
 package com.omnibus.backend.repository;
 
+import com.omnibus.backend.dto.DiaCalendarioDTO;
+import com.omnibus.backend.dto.ViajeResponseDTO;
+import com.omnibus.backend.model.EstadoPasaje;
 import com.omnibus.backend.model.EstadoViaje;
 import com.omnibus.backend.model.Omnibus;
 import com.omnibus.backend.model.Viaje;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
-public interface ViajeRepository extends JpaRepository<Viaje, Integer>, JpaSpecificationExecutor<Viaje> {
+public interface ViajeRepository extends JpaRepository<Viaje, Integer>, JpaSpecificationExecutor<Viaje>, ViajeRepositoryCustom {
+
+    // SELECT de proyección a ViajeResponseDTO, compartido con ViajeRepositoryCustomImpl
+    String PROYECCION_VIAJE_RESPONSE = "SELECT new com.omnibus.backend.dto.ViajeResponseDTO(" +
+            "v.id, v.fechaHoraSalida, v.fechaHoraLlegada, o.id, o.nombre, d.id, d.nombre, " +
+            "b.id, b.matricula, v.asientosDisponibles, v.estado, v.precio) " +
+            "FROM Viaje v JOIN v.origen o JOIN v.destino d LEFT JOIN v.busAsignado b ";
+
+    // --- PROYECCIONES PARA ENDPOINTS DE LECTURA (una consulta, sin inicializar proxies) ---
+
+    @Query(PROYECCION_VIAJE_RESPONSE + "WHERE v.estado = :estado")
+    List<ViajeResponseDTO> findResponseByEstado(@Param("estado") EstadoViaje estado);
+
+    /**
+     * Calendario de una ruta: una fila por día con salidas en el rango, con la cantidad de salidas,
+     * el total de asientos libres (contador asientosDisponibles) y el precio base mínimo.
+     */
+    @Query("SELECT new com.omnibus.backend.dto.DiaCalendarioDTO(CAST(v.fechaHoraSalida AS LocalDate), " +
+            "COUNT(v), SUM(v.asientosDisponibles), MIN(v.precio)) " +
+            "FROM Viaje v WHERE v.origen.id = :origenId AND v.destino.id = :destinoId " +
+            "AND v.estado = :estado AND v.fechaHoraSalida >= :desde AND v.fechaHoraSalida < :hasta " +
+            "GROUP BY CAST(v.fechaHoraSalida AS LocalDate) " +
+            "ORDER BY CAST(v.fechaHoraSalida AS LocalDate)")
+    List<DiaCalendarioDTO> calcularCalendarioRuta(@Param("origenId") Long origenId,
+                                                  @Param("destinoId") Long destinoId,
+                                                  @Param("estado") EstadoViaje estado,
+                                                  @Param("desde") LocalDateTime desde,
+                                                  @Param("hasta") LocalDateTime hasta);
+
+    // Pares [localidadId, cantidad de viajes]; los usa el autocompletado para ordenar por volumen
+    @Query("SELECT v.origen.id, COUNT(v) FROM Viaje v GROUP BY v.origen.id")
+    List<Object[]> contarViajesPorOrigen();
+
+    @Query("SELECT v.destino.id, COUNT(v) FROM Viaje v GROUP BY v.destino.id")
+    List<Object[]> contarViajesPorDestino();
 
     // --- QUERIES DE LÓGICA DE NEGOCIO (con JOIN FETCH para evitar errores LAZY) ---
 
+    /**
+     * Primera página del listado de precios, ordenado por (fecha de salida, id).
+     * El Pageable solo se usa para limitar las filas (LIMIT); no se hace consulta de conteo.
+     */
+    @Query("SELECT v FROM Viaje v JOIN FETCH v.origen JOIN FETCH v.destino JOIN FETCH v.busAsignado " +
+            "ORDER BY v.fechaHoraSalida ASC, v.id ASC")
+    List<Viaje> findPrimeraPaginaListadoPrecios(Pageable pagina);
+
+    /**
+     * Listado de precios completo como flujo de solo avance, ordenado por (fecha de salida, id).
+     * Las filas se traen del cursor de la BD de a {@code FILAS_POR_LECTURA_LISTADO} y las entidades se
+     * cargan en modo solo lectura. Debe consumirse dentro de una transacción y cerrarse al terminar.
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = FILAS_POR_LECTURA_LISTADO),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT v FROM Viaje v JOIN FETCH v.origen JOIN FETCH v.destino JOIN FETCH v.busAsignado " +
+            "ORDER BY v.fechaHoraSalida ASC, v.id ASC")
+    Stream<Viaje> streamListadoPrecios();
+
+    String FILAS_POR_LECTURA_LISTADO = "500";
+
+    /**
+     * Página siguiente del listado de precios por keyset: los viajes posteriores a (salida, id)
+     * del último viaje entregado, sin OFFSET.
+     */
+    @Query("SELECT v FROM Viaje v JOIN FETCH v.origen JOIN FETCH v.destino JOIN FETCH v.busAsignado " +
+            "WHERE v.fechaHoraSalida > :salida OR (v.fechaHoraSalida = :salida AND v.id > :id) " +
+            "ORDER BY v.fechaHoraSalida ASC, v.id ASC")
+    List<Viaje> findPaginaListadoPreciosDespuesDe(@Param("salida") LocalDateTime salida,
+                                                 @Param("id") Integer id,
+                                                 Pageable pagina);
+
     @Query("SELECT v FROM Viaje v JOIN FETCH v.origen JOIN FETCH v.destino JOIN FETCH v.busAsignado WHERE v.busAsignado = :bus " +
             "AND v.fechaHoraSalida < :finViajeNuevo " +
             "AND v.fechaHoraLlegada > :inicioViajeNuevo " +
@@ -41,6 +120,27 @@ public interface ViajeRepository extends JpaRepository<Viaje, Integer>, JpaSpeci
             @Param("idViajeExcluir") Integer idViajeExcluir
     );
 
+    /**
+     * Devuelve filas [busId, fechaHoraSalida, fechaHoraLlegada, origenId, destinoId, destinoNombre] de los
+     * viajes de esos buses que salen antes de {@code hasta}, ordenadas por bus y salida. Lo usa la carga en
+     * lote para confirmar contra la BD, en una sola consulta, los buses elegidos desde el índice en memoria:
+     * alcanzan para ver superposiciones, dónde está el bus antes de cada cadena y los buffers con el viaje siguiente.
+     */
+    @Query("SELECT v.busAsignado.id, v.fechaHoraSalida, v.fechaHoraLlegada, v.origen.id, d.id, d.nombre " +
+            "FROM Viaje v JOIN v.destino d " +
+            "WHERE v.busAsignado.id IN :busIds AND v.fechaHoraSalida < :hasta AND v.estado IN :estados " +
+            "ORDER BY v.busAsignado.id, v.fechaHoraSalida")
+    List<Object[]> findAgendaPorBusesHasta(@Param("busIds") Collection<Long> busIds,
+                                           @Param("hasta") LocalDateTime hasta,
+                                           @Param("estados") Collection<EstadoViaje> estados);
+
+    /**
+     * Devuelve pares [id, asientosDisponibles] de los viajes indicados. Lo usa el índice de rutas para
+     * releer el contador de los viajes que cambiaron mientras se recargaba.
+     */
+    @Query("SELECT v.id, v.asientosDisponibles FROM Viaje v WHERE v.id IN :ids")
+    List<Object[]> findAsientosDisponiblesByIdIn(@Param("ids") Collection<Integer> ids);
+
     @Query("SELECT v FROM Viaje v JOIN FETCH v.origen JOIN FETCH v.destino JOIN FETCH v.busAsignado WHERE v.busAsignado = :bus " +
             "AND v.fechaHoraLlegada < :fechaHoraReferencia " +
             "AND v.estado IN :estados " +
@@ -61,16 +161,79 @@ public interface ViajeRepository extends JpaRepository<Viaje, Integer>, JpaSpeci
             @Param("estados") List<EstadoViaje> estados
     );
 
-    // --- MÉTODOS PARA EL SCHEDULER (CON JOIN FETCH PARA PREVENIR ERRORES) ---
+    /**
+     * Agenda de todos los ómnibus en alguno de los estados indicados respecto de un viaje nuevo, en una sola consulta.
+     * A la línea de viajes PROGRAMADO/EN_CURSO de cada bus se le agrega una fila ficticia con el viaje
+     * nuevo; LAG y LEAD sobre esa línea (particionada por bus y ordenada por salida) dan el viaje
+     * anterior y el siguiente. Hay conflicto si algún viaje previo llega después de la salida nueva
+     * o si el siguiente sale antes de la llegada nueva.
+     * <p>
+     * Columnas: [bus_id, conflicto, viaje_conflictivo_id, ubicacion_id, ubicacion_nombre,
+     * llegada_anterior, origen_proximo_id, salida_proxima]. viaje_conflictivo_id puede ser null
+     * aunque haya conflicto (si el viaje superpuesto no es el inmediatamente anterior o siguiente).
+     */
+    @Query(nativeQuery = true, value =
+            "WITH candidatos AS (" +
+            "  SELECT o.id AS bus_id, o.localidad_actual_id FROM omnibus o WHERE o.estado IN (:estadosBus)" +
+            "), linea AS (" +
+            "  SELECT v.bus_asignado_id AS bus_id, v.id AS viaje_id, v.fecha_hora_salida AS salida, " +
+            "         v.fecha_hora_llegada AS llegada, v.origen_id, v.destino_id " +
+            "  FROM viaje v JOIN candidatos c ON c.bus_id = v.bus_asignado_id " +
+            "  WHERE v.estado IN ('PROGRAMADO', 'EN_CURSO') " +
+            "  UNION ALL " +
+            "  SELECT c.bus_id, NULL, CAST(:salida AS timestamp), CAST(:llegada AS timestamp), NULL, NULL FROM candidatos c" +
+            "), vecinos AS (" +
+            "  SELECT l.bus_id, l.viaje_id, " +
+            "         LAG(l.viaje_id) OVER w AS anterior_id, LAG(l.destino_id) OVER w AS destino_anterior_id, " +
+            "         LAG(l.llegada) OVER w AS llegada_anterior, " +
+            "         LEAD(l.viaje_id) OVER w AS proximo_id, LEAD(l.origen_id) OVER w AS origen_proximo_id, " +
+            "         LEAD(l.salida) OVER w AS salida_proxima, " +
+            "         MAX(l.llegada) OVER (PARTITION BY l.bus_id ORDER BY l.salida, l.viaje_id NULLS LAST " +
+            "                              ROWS BETWEEN UNBOUNDED PRECEDING AND 1 PRECEDING) AS llegada_maxima_previa " +
+            "  FROM linea l " +
+            "  WINDOW w AS (PARTITION BY l.bus_id ORDER BY l.salida, l.viaje_id NULLS LAST)" +
+            ") " +
+            "SELECT n.bus_id, " +
+            "       (COALESCE(n.llegada_maxima_previa > CAST(:salida AS timestamp), FALSE) " +
+            "        OR COALESCE(n.salida_proxima < CAST(:llegada AS timestamp), FALSE)) AS conflicto, " +
+            "       CASE WHEN n.llegada_anterior > CAST(:salida AS timestamp) THEN n.anterior_id " +
+            "            WHEN n.salida_proxima < CAST(:llegada AS timestamp) THEN n.proximo_id END AS viaje_conflictivo_id, " +
+            "       u.id AS ubicacion_id, u.nombre AS ubicacion_nombre, n.llegada_anterior, " +
+            "       n.origen_proximo_id, n.salida_proxima " +
+            "FROM vecinos n JOIN candidatos c ON c.bus_id = n.bus_id " +
+            "JOIN localidades u ON u.id = COALESCE(n.destino_anterior_id, c.localidad_actual_id) " +
+            "WHERE n.viaje_id IS NULL " +
+            "ORDER BY n.bus_id")
+    List<Object[]> calcularAgendasBuses(@Param("salida") LocalDateTime salida,
+                                        @Param("llegada") LocalDateTime llegada,
+                                        @Param("estadosBus") Collection<String> estadosBus);
 
-    @Query("SELECT v FROM Viaje v JOIN FETCH v.busAsignado b JOIN FETCH b.localidadActual JOIN FETCH v.origen JOIN FETCH v.destino WHERE v.estado = com.omnibus.backend.model.EstadoViaje.PROGRAMADO AND v.fechaHoraSalida <= :ahora")
-    List<Viaje> findScheduledTripsToStart(@Param("ahora") LocalDateTime ahora);
+    // Pares [horarioId, fechaHoraSalida] de los viajes ya generados por esos horarios en el rango
+    @Query("SELECT v.horario.id, v.fechaHoraSalida FROM Viaje v WHERE v.horario.id IN :horarioIds " +
+            "AND v.fechaHoraSalida >= :desde AND v.fechaHoraSalida < :hasta")
+    List<Object[]> findSalidasGeneradasPorHorarios(@Param("horarioIds") Collection<Long> horarioIds,
+                                                   @Param("desde") LocalDateTime desde,
+                                                   @Param("hasta") LocalDateTime hasta);
 
-    @Query("SELECT v FROM Viaje v JOIN FETCH v.busAsignado b JOIN FETCH b.localidadActual JOIN FETCH v.origen JOIN FETCH v.destino WHERE v.estado = com.omnibus.backend.model.EstadoViaje.EN_CURSO AND v.fechaHoraLlegada <= :ahora")
-    List<Viaje> findOngoingTripsToFinish(@Param("ahora") LocalDateTime ahora);
+    // Carga del índice de rutas en memoria: todos los viajes en los estados indicados con sus relaciones
+    @Query("SELECT v FROM Viaje v JOIN FETCH v.origen JOIN FETCH v.destino JOIN FETCH v.busAsignado WHERE v.estado IN :estados")
+    List<Viaje> findByEstadoInConRelaciones(@Param("estados") Collection<EstadoViaje> estados);
 
-    @Query("SELECT v FROM Viaje v JOIN FETCH v.busAsignado b JOIN FETCH b.localidadActual JOIN FETCH v.origen JOIN FETCH v.destino WHERE v.estado = com.omnibus.backend.model.EstadoViaje.PROGRAMADO AND v.fechaHoraLlegada <= :ahora")
-    List<Viaje> findScheduledTripsToFinishDirectly(@Param("ahora") LocalDateTime ahora);
+    // --- MÉTODOS PARA EL SCHEDULER (CON JOIN FETCH PARA PREVENIR ERRORES) ---
+
+    /**
+     * Carga un viaje con lo necesario para aplicarle una transición de estado (cierre de ventas,
+     * inicio o finalización con liberación del bus).
+     */
+    @Query("SELECT v FROM Viaje v LEFT JOIN FETCH v.busAsignado JOIN FETCH v.origen JOIN FETCH v.destino WHERE v.id = :id")
+    Optional<Viaje> findParaTransicion(@Param("id") Integer id);
+
+    /**
+     * Devuelve filas [id, estado, fechaHoraSalida, fechaHoraLlegada] de los viajes en los estados indicados,
+     * sin cargar entidades. Se usa para reconstruir la cola de transiciones de estado.
+     */
+    @Query("SELECT v.id, v.estado, v.fechaHoraSalida, v.fechaHoraLlegada FROM Viaje v WHERE v.estado IN :estados")
+    List<Object[]> findDatosTransicionByEstadoIn(@Param("estados") Collection<EstadoViaje> estados);
 
     // --- Métodos de búsqueda simple ---
     // Estos no necesitan JOIN FETCH a menos que se usen en contextos donde se accede a las relaciones.
@@ -78,10 +241,36 @@ public interface ViajeRepository extends JpaRepository<Viaje, Integer>, JpaSpeci
     List<Viaje> findByBusAsignado_Id(Long omnibusId);
     List<Viaje> findByBusAsignado_IdAndEstadoIn(Long busId, List<EstadoViaje> estados);
 
-    @Query("SELECT v FROM Viaje v WHERE v.estado = com.omnibus.backend.model.EstadoViaje.PROGRAMADO AND v.fechaHoraSalida <= :unaHoraDespues AND v.fechaHoraSalida > :ahora")
-    List<Viaje> findTripsToCloseSales(@Param("ahora") LocalDateTime ahora, @Param("unaHoraDespues") LocalDateTime unaHoraDespues);
+    // --- ACTUALIZACIONES ATÓMICAS DEL CONTADOR DE ASIENTOS ---
+    // Se ejecutan como un único UPDATE condicional en la BD, sin leer ni guardar la entidad completa,
+    // para que dos ventas concurrentes no se pisen (evita el "last writer wins").
+
+    /**
+     * Descuenta asientos solo si quedan suficientes.
+     * @return 1 si se descontaron, 0 si no había asientos suficientes (o el viaje no existe).
+     */
+    @Modifying
+    @Query("UPDATE Viaje v SET v.asientosDisponibles = v.asientosDisponibles - :cantidad " +
+            "WHERE v.id = :viajeId AND v.asientosDisponibles >= :cantidad")
+    int decrementarAsientosDisponibles(@Param("viajeId") Integer viajeId, @Param("cantidad") int cantidad);
+
+    /**
+     * Devuelve asientos al contador (devoluciones y reservas expiradas).
+     * @return 1 si se actualizó el viaje, 0 si no existe.
+     */
+    @Modifying
+    @Query("UPDATE Viaje v SET v.asientosDisponibles = v.asientosDisponibles + :cantidad WHERE v.id = :viajeId")
+    int incrementarAsientosDisponibles(@Param("viajeId") Integer viajeId, @Param("cantidad") int cantidad);
 
-    @Query("SELECT v FROM Viaje v WHERE v.estado = com.omnibus.backend.model.EstadoViaje.VENTAS_CERRADAS AND v.fechaHoraSalida <= :ahora")
-    List<Viaje> findTripsToStart(@Param("ahora") LocalDateTime ahora);
+    /**
+     * Recalcula el contador a partir de la capacidad indicada y de los pasajes ocupados en el mismo UPDATE.
+     * Vacía y limpia el contexto de persistencia, por lo que las entidades cargadas antes quedan desasociadas.
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Viaje v SET v.asientosDisponibles = CAST(:capacidad - (SELECT COUNT(p) FROM Pasaje p " +
+            "WHERE p.datosViaje.id = :viajeId AND p.estado IN :estados) AS Integer) WHERE v.id = :viajeId")
+    int recalcularAsientosDisponibles(@Param("viajeId") Integer viajeId,
+                                      @Param("capacidad") int capacidad,
+                                      @Param("estados") Collection<EstadoPasaje> estados);
 
 }
\ No newline at end of file
@@ -0,0 +1,50 @@
+package com.omnibus.backend.repository;
+
+import com.omnibus.backend.dto.BusquedaViajesGeneralDTO;
+import com.omnibus.backend.dto.BusquedaViajesOmnibusDTO;
+import com.omnibus.backend.dto.CursorPaginacion;
+import com.omnibus.backend.dto.ViajeConDisponibilidadDTO;
+import com.omnibus.backend.dto.ViajeResponseDTO;
+import com.omnibus.backend.model.Viaje;
+import org.springframework.data.domain.Sort;
+
+import java.util.List;
+
+/**
+ * Consultas de {@link ViajeRepository} que se arman dinámicamente en JPQL
+ * (no se pueden expresar con métodos derivados ni con una @Query fija), y escrituras en lote.
+ */
+public interface ViajeRepositoryCustom {
+
+    /**
+     * Busca viajes con su disponibilidad en una sola sentencia SQL: los pasajes VENDIDO/RESERVADO
+     * se cuentan con un LEFT JOIN agrupado, y el filtro de asientos mínimos y el orden se aplican
+     * en la base de datos.
+     */
+    List<ViajeConDisponibilidadDTO> buscarConDisponibilidad(BusquedaViajesGeneralDTO criterios);
+
+    /**
+     * Variante paginada por cursor (keyset) de {@link #buscarConDisponibilidad(BusquedaViajesGeneralDTO)}:
+     * devuelve como mucho {@code maxResultados} viajes posteriores a la posición del cursor en el orden pedido.
+     *
+     * @param cursor posición del último viaje de la página anterior, o null para la primera página.
+     * @param maxResultados máximo de filas a devolver, o null para no limitar.
+     */
+    List<ViajeConDisponibilidadDTO> buscarConDisponibilidad(BusquedaViajesGeneralDTO criterios,
+                                                            CursorPaginacion cursor, Integer maxResultados);
+
+    /**
+     * Viajes de un ómnibus proyectados directamente a ViajeResponseDTO, con los filtros de fecha y
+     * estado de la búsqueda. Sin estado, se devuelven los PROGRAMADO y EN_CURSO.
+     *
+     * @param orden propiedades de Viaje por las que ordenar (ya validadas por el servicio).
+     */
+    List<ViajeResponseDTO> buscarResponsePorOmnibus(Long omnibusId, BusquedaViajesOmnibusDTO criterios, Sort orden);
+
+    /**
+     * Inserta los viajes nuevos con un único batch JDBC y les asigna el ID generado.
+     * Con IDENTITY, Hibernate inserta fila por fila; por eso la carga en lote escribe directamente.
+     * Los viajes no quedan administrados por el contexto de persistencia.
+     */
+    void insertarEnLote(List<Viaje> viajes);
+}
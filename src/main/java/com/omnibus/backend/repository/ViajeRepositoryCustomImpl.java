@@ -0,0 +1,180 @@
+package com.omnibus.backend.repository;
+
+import com.omnibus.backend.dto.BusquedaViajesGeneralDTO;
+import com.omnibus.backend.dto.BusquedaViajesOmnibusDTO;
+import com.omnibus.backend.dto.CursorPaginacion;
+import com.omnibus.backend.dto.ViajeConDisponibilidadDTO;
+import com.omnibus.backend.dto.ViajeResponseDTO;
+import com.omnibus.backend.model.EstadoViaje;
+import com.omnibus.backend.model.Viaje;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.TypedQuery;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class ViajeRepositoryCustomImpl implements ViajeRepositoryCustom {
+
+    private static final String INSERT_VIAJE = "INSERT INTO viaje (fecha_hora_salida, fecha_hora_llegada, origen_id, " +
+            "destino_id, bus_asignado_id, asientos_disponibles, pasajes_vendidos, estado, precio, horario_id) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Override
+    public void insertarEnLote(List<Viaje> viajes) {
+        if (viajes.isEmpty()) {
+            return;
+        }
+        KeyHolder claves = new GeneratedKeyHolder();
+        jdbcTemplate.batchUpdate(conexion -> conexion.prepareStatement(INSERT_VIAJE, new String[]{"id"}),
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        Viaje viaje = viajes.get(i);
+                        ps.setTimestamp(1, Timestamp.valueOf(viaje.getFechaHoraSalida()));
+                        ps.setTimestamp(2, Timestamp.valueOf(viaje.getFechaHoraLlegada()));
+                        ps.setLong(3, viaje.getOrigen().getId());
+                        ps.setLong(4, viaje.getDestino().getId());
+                        ps.setLong(5, viaje.getBusAsignado().getId());
+                        ps.setInt(6, viaje.getAsientosDisponibles());
+                        ps.setInt(7, viaje.getPasajesVendidos());
+                        ps.setString(8, viaje.getEstado().name());
+                        ps.setDouble(9, viaje.getPrecio());
+                        ps.setObject(10, viaje.getHorario() != null ? viaje.getHorario().getId() : null, Types.BIGINT);
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return viajes.size();
+                    }
+                }, claves);
+        List<Map<String, Object>> generadas = claves.getKeyList();
+        for (int i = 0; i < viajes.size(); i++) {
+            viajes.get(i).setId(((Number) generadas.get(i).get("id")).intValue());
+        }
+    }
+
+    @Override
+    public List<ViajeConDisponibilidadDTO> buscarConDisponibilidad(BusquedaViajesGeneralDTO criterios) {
+        return buscarConDisponibilidad(criterios, null, null);
+    }
+
+    @Override
+    public List<ViajeConDisponibilidadDTO> buscarConDisponibilidad(BusquedaViajesGeneralDTO criterios,
+                                                                   CursorPaginacion cursor, Integer maxResultados) {
+        OrdenBusquedaViajes orden = OrdenBusquedaViajes.desde(criterios.getSortBy());
+        boolean descendente = OrdenBusquedaViajes.esDescendente(criterios.getSortDir());
+        StringBuilder jpql = new StringBuilder(
+                "SELECT new com.omnibus.backend.dto.ViajeConDisponibilidadDTO(" +
+                        "v.id, v.fechaHoraSalida, v.fechaHoraLlegada, o.nombre, d.nombre, " +
+                        "b.matricula, b.capacidadAsientos, CAST(b.capacidadAsientos - v.asientosDisponibles AS Long), " +
+                        "v.estado, v.precio) " +
+                "FROM Viaje v JOIN v.origen o JOIN v.destino d JOIN v.busAsignado b " +
+                "WHERE 1 = 1");
+        Map<String, Object> parametros = new HashMap<>();
+
+        if (criterios.getOrigenId() != null) {
+            jpql.append(" AND o.id = :origenId");
+            parametros.put("origenId", criterios.getOrigenId());
+        }
+        if (criterios.getDestinoId() != null) {
+            jpql.append(" AND d.id = :destinoId");
+            parametros.put("destinoId", criterios.getDestinoId());
+        }
+        if (criterios.getFechaDesde() != null) {
+            jpql.append(" AND v.fechaHoraSalida >= :fechaDesde");
+            parametros.put("fechaDesde", criterios.getFechaDesde().atStartOfDay());
+        }
+        if (criterios.getFechaHasta() != null) {
+            jpql.append(" AND v.fechaHoraSalida <= :fechaHasta");
+            parametros.put("fechaHasta", criterios.getFechaHasta().plusDays(1).atStartOfDay());
+        }
+        if (criterios.getEstado() != null) {
+            jpql.append(" AND v.estado = :estado");
+            parametros.put("estado", criterios.getEstado());
+        } else {
+            jpql.append(" AND v.estado IN :estadosViaje");
+            parametros.put("estadosViaje", List.of(EstadoViaje.PROGRAMADO, EstadoViaje.EN_CURSO));
+        }
+
+        if (criterios.getMinAsientosDisponibles() != null) {
+            jpql.append(" AND v.asientosDisponibles >= :minAsientos");
+            parametros.put("minAsientos", criterios.getMinAsientosDisponibles());
+        }
+
+        // Keyset: solo las filas posteriores a (valor, id) del cursor en el orden pedido, sin OFFSET
+        if (cursor != null) {
+            String operador = descendente ? " < " : " > ";
+            String expresion = orden.getExpresionJpql();
+            jpql.append(" AND (").append(expresion).append(operador).append(":valorCursor OR (").append(expresion)
+                    .append(" = :valorCursor AND v.id").append(operador).append(":idCursor))");
+            parametros.put("valorCursor", orden.leerValorCursor(cursor.valor()));
+            parametros.put("idCursor", cursor.id());
+        }
+
+        String direccion = descendente ? " DESC" : " ASC";
+        jpql.append(" ORDER BY ").append(orden.getExpresionJpql()).append(direccion)
+                .append(", v.id").append(direccion);
+
+        TypedQuery<ViajeConDisponibilidadDTO> query = entityManager.createQuery(jpql.toString(), ViajeConDisponibilidadDTO.class);
+        parametros.forEach(query::setParameter);
+        if (maxResultados != null) {
+            query.setMaxResults(maxResultados);
+        }
+        return query.getResultList();
+    }
+
+    @Override
+    public List<ViajeResponseDTO> buscarResponsePorOmnibus(Long omnibusId, BusquedaViajesOmnibusDTO criterios, Sort orden) {
+        StringBuilder jpql = new StringBuilder(ViajeRepository.PROYECCION_VIAJE_RESPONSE).append("WHERE b.id = :omnibusId");
+        Map<String, Object> parametros = new HashMap<>();
+        parametros.put("omnibusId", omnibusId);
+
+        if (criterios.getFechaDesde() != null) {
+            jpql.append(" AND v.fechaHoraSalida >= :fechaDesde");
+            parametros.put("fechaDesde", criterios.getFechaDesde().atStartOfDay());
+        }
+        if (criterios.getFechaHasta() != null) {
+            jpql.append(" AND v.fechaHoraSalida <= :fechaHasta");
+            parametros.put("fechaHasta", criterios.getFechaHasta().plusDays(1).atStartOfDay());
+        }
+        if (criterios.getEstadoViaje() != null) {
+            jpql.append(" AND v.estado = :estado");
+            parametros.put("estado", criterios.getEstadoViaje());
+        } else {
+            jpql.append(" AND v.estado IN :estadosViaje");
+            parametros.put("estadosViaje", List.of(EstadoViaje.PROGRAMADO, EstadoViaje.EN_CURSO));
+        }
+
+        List<String> ordenes = new ArrayList<>();
+        for (Sort.Order criterio : orden) {
+            ordenes.add("v." + criterio.getProperty() + (criterio.isDescending() ? " DESC" : " ASC"));
+        }
+        if (!ordenes.isEmpty()) {
+            jpql.append(" ORDER BY ").append(String.join(", ", ordenes));
+        }
+
+        TypedQuery<ViajeResponseDTO> query = entityManager.createQuery(jpql.toString(), ViajeResponseDTO.class);
+        parametros.forEach(query::setParameter);
+        return query.getResultList();
+    }
+}
@@ -0,0 +1,162 @@
+package com.omnibus.backend.service;
+
+import com.omnibus.backend.model.EstadoPasaje;
+import com.omnibus.backend.model.Pasaje;
+import com.omnibus.backend.repository.PasajeRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Avisa a los pasajeros que se cerraron las ventas de su viaje: recordatorio por email, notificación push
+ * (Firebase) y notificación web (campanita).
+ * <p>
+ * Empieza recién cuando se confirma la transacción que cambió el estado del viaje, así ninguna llamada
+ * lenta (SMTP, FCM) retiene esa transacción ni su conexión. Los destinatarios se leen en una sola consulta
+ * y cada canal tiene su propio pool acotado de hilos, con su límite de envíos en paralelo: un servidor de
+ * correo lento no frena las notificaciones push. Los avisos de cada viaje los publica un hilo despachador
+ * propio, nunca el que confirmó la transacción; si la cola de un canal se llena, el envío lo hace ese
+ * despachador, que así se frena en lugar de acumular trabajo sin límite.
+ */
+@Service
+public class AvisoCierreVentasService {
+
+    private static final Logger logger = LoggerFactory.getLogger(AvisoCierreVentasService.class);
+    private static final int HILOS_EMAIL = 4;
+    private static final int HILOS_PUSH = 8;
+    // Las notificaciones web de un viaje se guardan juntas con un saveAll; alcanza con un hilo
+    private static final int HILOS_WEB = 1;
+    private static final int CAPACIDAD_COLA_POR_CANAL = 5000;
+    private static final long SEGUNDOS_ESPERA_AL_CERRAR = 30;
+
+    private final PasajeRepository pasajeRepository;
+    private final EmailService emailService;
+    private final FirebaseNotificationService firebaseNotificationService;
+    private final NotificacionService notificacionService;
+    private final TransactionTemplate lecturaNueva;
+
+    private final ExecutorService hiloDespacho;
+    private final ThreadPoolExecutor hilosEmail;
+    private final ThreadPoolExecutor hilosPush;
+    private final ThreadPoolExecutor hilosWeb;
+
+    @Autowired
+    public AvisoCierreVentasService(PasajeRepository pasajeRepository,
+                                    EmailService emailService,
+                                    FirebaseNotificationService firebaseNotificationService,
+                                    NotificacionService notificacionService,
+                                    PlatformTransactionManager transactionManager) {
+        this.pasajeRepository = pasajeRepository;
+        this.emailService = emailService;
+        this.firebaseNotificationService = firebaseNotificationService;
+        this.notificacionService = notificacionService;
+        // Se usa desde afterCommit, cuando la transacción anterior sigue asociada al hilo: hace falta una nueva
+        this.lecturaNueva = new TransactionTemplate(transactionManager);
+        this.lecturaNueva.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.lecturaNueva.setReadOnly(true);
+        this.hiloDespacho = Executors.newSingleThreadExecutor(tarea -> new Thread(tarea, "aviso-despacho"));
+        this.hilosEmail = crearPool("aviso-email-", HILOS_EMAIL);
+        this.hilosPush = crearPool("aviso-push-", HILOS_PUSH);
+        this.hilosWeb = crearPool("aviso-web-", HILOS_WEB);
+    }
+
+    private static ThreadPoolExecutor crearPool(String prefijo, int hilos) {
+        AtomicInteger contador = new AtomicInteger();
+        return new ThreadPoolExecutor(hilos, hilos, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(CAPACIDAD_COLA_POR_CANAL),
+                tarea -> new Thread(tarea, prefijo + contador.incrementAndGet()),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * Programa los avisos del viaje para cuando se confirme la transacción actual (o de inmediato si no hay
+     * una activa). Si la transacción se revierte, no se avisa a nadie. No bloquea al hilo que llama.
+     */
+    public void avisarTrasCommit(Integer viajeId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    hiloDespacho.execute(() -> avisar(viajeId));
+                }
+            });
+        } else {
+            hiloDespacho.execute(() -> avisar(viajeId));
+        }
+    }
+
+    private void avisar(Integer viajeId) {
+        List<Pasaje> pasajes;
+        try {
+            pasajes = lecturaNueva.execute(status ->
+                    pasajeRepository.findConClienteYViajeByViajeIdAndEstado(viajeId, EstadoPasaje.VENDIDO));
+        } catch (Exception e) {
+            logger.error("...[ERROR] No se pudieron leer los pasajeros a avisar del viaje ID {}. Causa: {}", viajeId, e.getMessage(), e);
+            return;
+        }
+        if (pasajes == null || pasajes.isEmpty()) {
+            return;
+        }
+        logger.info("...Avisando a {} pasajeros con pasajes VENDIDOS del cierre de ventas del viaje ID {}.", pasajes.size(), viajeId);
+
+        for (Pasaje pasaje : pasajes) {
+            hilosEmail.execute(() -> {
+                try {
+                    emailService.sendDepartureReminderEmail(pasaje);
+                } catch (Exception e) {
+                    logger.error("...[ERROR] No se pudo enviar el recordatorio por EMAIL al cliente ID {} ({}) para el viaje ID {}. Causa: {}",
+                            pasaje.getCliente().getId(), pasaje.getCliente().getEmail(), viajeId, e.getMessage());
+                }
+            });
+            hilosPush.execute(() -> {
+                try {
+                    firebaseNotificationService.sendVentasCerradasNotification(pasaje);
+                } catch (Exception e) {
+                    logger.error("...[ERROR] No se pudo enviar notificación PUSH al cliente ID {} ({}) para el viaje ID {}. Causa: {}",
+                            pasaje.getCliente().getId(), pasaje.getCliente().getEmail(), viajeId, e.getMessage());
+                }
+            });
+        }
+        hilosWeb.execute(() -> {
+            try {
+                notificacionService.crearNotificacionesRecordatorioViaje(pasajes);
+                logger.info("...{} notificaciones WEB (campanita) creadas para el viaje ID {}", pasajes.size(), viajeId);
+            } catch (Exception e) {
+                logger.error("...[ERROR] No se pudieron crear las notificaciones WEB del viaje ID {}. Causa: {}", viajeId, e.getMessage());
+            }
+        });
+    }
+
+    // Deja terminar los avisos ya encolados (con un tope) antes de apagar la aplicación
+    @PreDestroy
+    public void cerrar() {
+        // Primero el despachador, que es quien llena las colas de los canales
+        List<ExecutorService> pools = List.of(hiloDespacho, hilosEmail, hilosPush, hilosWeb);
+        try {
+            for (ExecutorService pool : pools) {
+                pool.shutdown();
+                if (!pool.awaitTermination(SEGUNDOS_ESPERA_AL_CERRAR, TimeUnit.SECONDS)) {
+                    logger.warn("Avisos de cierre de ventas sin enviar al apagar: {}", pool.shutdownNow().size());
+                }
+            }
+        } catch (InterruptedException e) {
+            pools.forEach(ExecutorService::shutdownNow);
+            Thread.currentThread().interrupt();
+        }
+    }
+}
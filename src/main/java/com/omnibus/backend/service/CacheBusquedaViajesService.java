@@ -0,0 +1,128 @@
+package com.omnibus.backend.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.omnibus.backend.dto.BusquedaViajesGeneralDTO;
+import com.omnibus.backend.dto.CambioAsientosDTO;
+import com.omnibus.backend.dto.ViajeConDisponibilidadDTO;
+import com.omnibus.backend.model.EstadoViaje;
+import com.omnibus.backend.repository.OrdenBusquedaViajes;
+import com.omnibus.backend.service.IndiceRutasService.ViajeIndexado;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Caché de resultados de {@link ViajeService#buscarViajesConDisponibilidad}, con clave en los criterios
+ * de búsqueda normalizados. Es acotada (Caffeine, desalojo W-TinyLFU) y con vencimiento corto.
+ * <p>
+ * Cuando cambian los asientos de un viaje (eventos {@link CambioAsientosDTO} de reservas, compras,
+ * expiraciones y schedulers) o el viaje cambia en su ruta ({@link RutaModificadaEvent}), se eliminan
+ * solo las búsquedas que podían incluirlo: misma ruta (o sin origen/destino) y rango de fechas que
+ * contiene su salida. Los aciertos y fallos se publican en actuator como métricas {@code cache.*}
+ * con la etiqueta {@code cache=busquedaViajes}.
+ */
+@Service
+public class CacheBusquedaViajesService {
+
+    private static final long MAX_ENTRADAS = 10_000;
+    private static final Duration VIGENCIA = Duration.ofSeconds(30);
+
+    private final IndiceRutasService indiceRutasService;
+    private final Cache<ClaveBusqueda, List<ViajeConDisponibilidadDTO>> cache;
+    // Se incrementa en cada invalidación; evita guardar un resultado calculado antes de un cambio
+    private final AtomicLong version = new AtomicLong();
+
+    @Autowired
+    public CacheBusquedaViajesService(IndiceRutasService indiceRutasService, MeterRegistry meterRegistry) {
+        this.indiceRutasService = indiceRutasService;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(MAX_ENTRADAS)
+                .expireAfterWrite(VIGENCIA)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "busquedaViajes");
+    }
+
+    /**
+     * Devuelve el resultado en caché para los criterios, o ejecuta la búsqueda y lo guarda.
+     * La lista devuelta es inmutable.
+     */
+    public List<ViajeConDisponibilidadDTO> obtener(BusquedaViajesGeneralDTO criterios,
+                                                  Supplier<List<ViajeConDisponibilidadDTO>> busqueda) {
+        ClaveBusqueda clave = ClaveBusqueda.de(criterios);
+        List<ViajeConDisponibilidadDTO> enCache = cache.getIfPresent(clave);
+        if (enCache != null) {
+            return enCache;
+        }
+        long versionInicial = version.get();
+        List<ViajeConDisponibilidadDTO> resultado = List.copyOf(busqueda.get());
+        cache.put(clave, resultado);
+        // Si hubo una invalidación mientras se buscaba, el resultado puede estar desactualizado
+        if (version.get() != versionInicial) {
+            cache.invalidate(clave);
+        }
+        return resultado;
+    }
+
+    // Después del índice de rutas: si se invalidara antes, una búsqueda concurrente podría volver a
+    // guardar los asientos viejos del índice por toda la vigencia de la entrada
+    @EventListener
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    public void alCambiarAsientos(CambioAsientosDTO cambio) {
+        ViajeIndexado viaje = indiceRutasService.viajeIndexado(cambio.getViajeId());
+        if (viaje == null) {
+            // Viaje fuera del índice: no se conoce su ruta, se descarta todo
+            invalidarTodo();
+            return;
+        }
+        invalidar(viaje.ruta.origenId(), viaje.ruta.destinoId(), viaje.salida);
+    }
+
+    @EventListener
+    public void alModificarRuta(RutaModificadaEvent evento) {
+        invalidar(evento.origenId(), evento.destinoId(), evento.salida());
+    }
+
+    private void invalidar(Long origenId, Long destinoId, LocalDateTime salida) {
+        version.incrementAndGet();
+        cache.asMap().keySet().removeIf(clave -> clave.puedeIncluir(origenId, destinoId, salida));
+    }
+
+    private void invalidarTodo() {
+        version.incrementAndGet();
+        cache.invalidateAll();
+    }
+
+    // Criterios normalizados: sortBy/sortDir equivalentes y los parámetros de paginación no forman parte de la clave
+    private record ClaveBusqueda(Long origenId, Long destinoId, LocalDate fechaDesde, LocalDate fechaHasta,
+                                 EstadoViaje estado, Integer minAsientos, OrdenBusquedaViajes orden,
+                                 boolean descendente) {
+
+        static ClaveBusqueda de(BusquedaViajesGeneralDTO criterios) {
+            return new ClaveBusqueda(criterios.getOrigenId(), criterios.getDestinoId(),
+                    criterios.getFechaDesde(), criterios.getFechaHasta(), criterios.getEstado(),
+                    criterios.getMinAsientosDisponibles(), OrdenBusquedaViajes.desde(criterios.getSortBy()),
+                    OrdenBusquedaViajes.esDescendente(criterios.getSortDir()));
+        }
+
+        // Mismos límites de fecha que la búsqueda en BD y en el índice de rutas
+        boolean puedeIncluir(Long origen, Long destino, LocalDateTime salida) {
+            return (origenId == null || origenId.equals(origen))
+                    && (destinoId == null || destinoId.equals(destino))
+                    && (fechaDesde == null || !salida.isBefore(fechaDesde.atStartOfDay()))
+                    && (fechaHasta == null || !salida.isAfter(fechaHasta.plusDays(1).atStartOfDay()));
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.omnibus.backend.service;
+
+import com.omnibus.backend.model.EstadoPasaje;
+import com.omnibus.backend.model.Pasaje;
+import com.omnibus.backend.repository.PasajeRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Programa la expiración de cada reserva temporal en el momento en que se crea, usando una
+ * DelayQueue en memoria. Cada segundo se retiran las reservas vencidas y se liberan en bloque,
+ * así los asientos vuelven a la venta como mucho un segundo después de vencer.
+ * Al arrancar, la cola se reconstruye con las reservas que haya en la base de datos.
+ */
+@Service
+public class ExpiracionReservasService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExpiracionReservasService.class);
+    private static final int MAX_RESERVAS_POR_LOTE = 500;
+
+    private final PasajeRepository pasajeRepository;
+    private final ReservasCleanupService reservasCleanupService;
+
+    private final DelayQueue<ReservaProgramada> cola = new DelayQueue<>();
+    // Evita programar dos veces la misma reserva (por ejemplo, si la reconstrucción coincide con una reserva nueva)
+    private final Set<Integer> programadas = ConcurrentHashMap.newKeySet();
+
+    @Autowired
+    public ExpiracionReservasService(PasajeRepository pasajeRepository,
+                                     ReservasCleanupService reservasCleanupService) {
+        this.pasajeRepository = pasajeRepository;
+        this.reservasCleanupService = reservasCleanupService;
+    }
+
+    /**
+     * Programa la expiración de las reservas una vez confirmada la transacción actual
+     * (o de inmediato si no hay una activa). Si la transacción se revierte, no se programa nada.
+     */
+    public void programarTrasCommit(List<Pasaje> reservas) {
+        Map<Integer, LocalDateTime> fechasPorPasaje = new HashMap<>();
+        for (Pasaje reserva : reservas) {
+            if (reserva.getId() != null && reserva.getFechaReserva() != null) {
+                fechasPorPasaje.put(reserva.getId(), reserva.getFechaReserva());
+            }
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    fechasPorPasaje.forEach(ExpiracionReservasService.this::programar);
+                }
+            });
+        } else {
+            fechasPorPasaje.forEach(this::programar);
+        }
+    }
+
+    /**
+     * @param fechaReservaUtc la fecha de reserva tal como se guarda en el pasaje (en UTC).
+     */
+    public void programar(Integer pasajeId, LocalDateTime fechaReservaUtc) {
+        if (!programadas.add(pasajeId)) {
+            return;
+        }
+        long expiraEnMillis = fechaReservaUtc.plusMinutes(ReservasCleanupService.MINUTOS_EXPIRACION)
+                .toInstant(ZoneOffset.UTC).toEpochMilli();
+        cola.put(new ReservaProgramada(pasajeId, expiraEnMillis));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void reconstruirDesdeBD() {
+        List<Object[]> reservas = pasajeRepository.findIdYFechaReservaByEstado(EstadoPasaje.RESERVADO);
+        for (Object[] fila : reservas) {
+            if (fila[1] != null) {
+                programar((Integer) fila[0], (LocalDateTime) fila[1]);
+            }
+        }
+        logger.info("Cola de expiración de reservas reconstruida con {} reservas pendientes.", reservas.size());
+    }
+
+    @Scheduled(fixedDelay = 1000)
+    public void liberarReservasVencidas() {
+        List<ReservaProgramada> vencidas = new ArrayList<>();
+        while (cola.drainTo(vencidas, MAX_RESERVAS_POR_LOTE) > 0) {
+            List<Integer> ids = vencidas.stream().map(ReservaProgramada::pasajeId).toList();
+            try {
+                int liberadas = reservasCleanupService.liberarReservas(ids);
+                if (liberadas > 0) {
+                    logger.info("Expiración de reservas: {} de {} reservas vencidas liberadas.", liberadas, ids.size());
+                }
+            } catch (Exception e) {
+                // Las que no se pudieron liberar las recoge el barrido periódico de ReservasCleanupService
+                logger.error("Error al liberar un lote de {} reservas vencidas: {}", ids.size(), e.getMessage(), e);
+            } finally {
+                ids.forEach(programadas::remove);
+                vencidas.clear();
+            }
+        }
+    }
+
+    private record ReservaProgramada(Integer pasajeId, long expiraEnMillis) implements Delayed {
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(expiraEnMillis - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed otro) {
+            if (otro instanceof ReservaProgramada r) {
+                return Long.compare(expiraEnMillis, r.expiraEnMillis);
+            }
+            return Long.compare(getDelay(TimeUnit.MILLISECONDS), otro.getDelay(TimeUnit.MILLISECONDS));
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.omnibus.backend.service;
+
+import com.omnibus.backend.dto.HorarioRequestDTO;
+import com.omnibus.backend.dto.HorarioResponseDTO;
+import com.omnibus.backend.model.Horario;
+import com.omnibus.backend.model.Localidad;
+import com.omnibus.backend.repository.HorarioRepository;
+import com.omnibus.backend.repository.LocalidadRepository;
+import jakarta.persistence.EntityNotFoundException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+/**
+ * Alta y baja de horarios recurrentes. Los viajes de cada horario los genera
+ * {@link MaterializadorHorariosService} en segundo plano.
+ */
+@Service
+public class HorarioService {
+
+    private static final Logger logger = LoggerFactory.getLogger(HorarioService.class);
+
+    private final HorarioRepository horarioRepository;
+    private final LocalidadRepository localidadRepository;
+
+    @Autowired
+    public HorarioService(HorarioRepository horarioRepository, LocalidadRepository localidadRepository) {
+        this.horarioRepository = horarioRepository;
+        this.localidadRepository = localidadRepository;
+    }
+
+    /**
+     * @throws IllegalArgumentException si el origen coincide con el destino o la salida no es anterior a la llegada.
+     * @throws EntityNotFoundException si alguna localidad no existe.
+     */
+    @Transactional
+    public HorarioResponseDTO crearHorario(HorarioRequestDTO dto) {
+        if (dto.getOrigenId().equals(dto.getDestinoId())) {
+            throw new IllegalArgumentException("La localidad de origen y destino no pueden ser la misma.");
+        }
+        if (!dto.getHoraSalida().isBefore(dto.getHoraLlegada())) {
+            throw new IllegalArgumentException("La hora de salida debe ser anterior a la de llegada.");
+        }
+        Localidad origen = localidadRepository.findById(dto.getOrigenId())
+                .orElseThrow(() -> new EntityNotFoundException("Localidad de origen no encontrada con ID: " + dto.getOrigenId()));
+        Localidad destino = localidadRepository.findById(dto.getDestinoId())
+                .orElseThrow(() -> new EntityNotFoundException("Localidad de destino no encontrada con ID: " + dto.getDestinoId()));
+
+        Horario horario = horarioRepository.save(Horario.builder()
+                .origen(origen)
+                .destino(destino)
+                .horaSalida(dto.getHoraSalida())
+                .horaLlegada(dto.getHoraLlegada())
+                .diasSemana(Horario.mascara(dto.getDiasSemana()))
+                .precio(dto.getPrecio())
+                .activo(true)
+                .build());
+        logger.info("Horario creado ID: {} ({} -> {} a las {}, días {}).", horario.getId(), origen.getNombre(),
+                destino.getNombre(), horario.getHoraSalida(), dto.getDiasSemana());
+        return mapToResponseDTO(horario);
+    }
+
+    @Transactional(readOnly = true)
+    public List<HorarioResponseDTO> listarHorarios() {
+        return horarioRepository.findAllConLocalidades().stream().map(this::mapToResponseDTO).toList();
+    }
+
+    /**
+     * Deja de generar viajes para el horario. Los viajes ya generados se mantienen.
+     * @throws EntityNotFoundException si el horario no existe.
+     */
+    @Transactional
+    public HorarioResponseDTO desactivarHorario(Long horarioId) {
+        Horario horario = horarioRepository.findById(horarioId)
+                .orElseThrow(() -> new EntityNotFoundException("Horario no encontrado con ID: " + horarioId));
+        horario.setActivo(false);
+        logger.info("Horario ID {} desactivado.", horarioId);
+        return mapToResponseDTO(horarioRepository.save(horario));
+    }
+
+    private HorarioResponseDTO mapToResponseDTO(Horario horario) {
+        return HorarioResponseDTO.builder()
+                .id(horario.getId())
+                .origenId(horario.getOrigen().getId())
+                .origenNombre(horario.getOrigen().getNombre())
+                .destinoId(horario.getDestino().getId())
+                .destinoNombre(horario.getDestino().getNombre())
+                .horaSalida(horario.getHoraSalida())
+                .horaLlegada(horario.getHoraLlegada())
+                .diasSemana(Horario.dias(horario.getDiasSemana()))
+                .precio(horario.getPrecio())
+                .activo(horario.isActivo())
+                .materializadoHasta(horario.getMaterializadoHasta())
+                .build();
+    }
+}
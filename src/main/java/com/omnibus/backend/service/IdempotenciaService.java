@@ -0,0 +1,209 @@
+package com.omnibus.backend.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.omnibus.backend.dto.CompraMultiplePasajesRequestDTO;
+import com.omnibus.backend.dto.PasajeResponseDTO;
+import com.omnibus.backend.model.RegistroIdempotencia;
+import com.omnibus.backend.repository.RegistroIdempotenciaRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Soporte de la cabecera Idempotency-Key para la confirmación de compras.
+ * <ul>
+ *     <li>Las respuestas recientes se guardan en una caché en memoria acotada (LRU) y con vencimiento,
+ *     así un reintento se responde sin tocar la base de datos.</li>
+ *     <li>Todas las respuestas se guardan además en la tabla registro_idempotencia, que se consulta
+ *     si la clave no está en memoria (por ejemplo, tras un reinicio).</li>
+ *     <li>Si llegan dos solicitudes con la misma clave a la vez, solo se ejecuta una y la otra espera su resultado.</li>
+ * </ul>
+ */
+@Service
+public class IdempotenciaService {
+
+    private static final Logger logger = LoggerFactory.getLogger(IdempotenciaService.class);
+    private static final int MAX_ENTRADAS_CACHE = 2000;
+    private static final long MINUTOS_VIGENCIA_CACHE = 15;
+    private static final long HORAS_VIGENCIA_REGISTRO = 24;
+    private static final int LONGITUD_MAXIMA_CLAVE = 100;
+
+    private final RegistroIdempotenciaRepository registroRepository;
+    private final ObjectMapper objectMapper;
+
+    // LinkedHashMap en orden de acceso: descarta la entrada menos usada al superar el máximo
+    private final Map<String, EntradaCache> cache = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, EntradaCache> eldest) {
+            return size() > MAX_ENTRADAS_CACHE;
+        }
+    };
+    private final Map<String, EjecucionEnCurso> enCurso = new ConcurrentHashMap<>();
+
+    @Autowired
+    public IdempotenciaService(RegistroIdempotenciaRepository registroRepository, ObjectMapper objectMapper) {
+        this.registroRepository = registroRepository;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Resultado de una compra idempotente.
+     * @param repetida true si la respuesta proviene de una ejecución anterior con la misma clave.
+     */
+    public record Resultado(List<PasajeResponseDTO> pasajes, boolean repetida) {
+    }
+
+    /**
+     * Ejecuta la compra una sola vez por clave y cliente. Los reintentos devuelven la respuesta guardada.
+     *
+     * @throws IllegalArgumentException si la clave es inválida o ya se usó con otra solicitud distinta.
+     */
+    public Resultado ejecutarCompra(String claveIdempotencia, CompraMultiplePasajesRequestDTO solicitud,
+                                    Supplier<List<PasajeResponseDTO>> compra) {
+        if (claveIdempotencia.isBlank() || claveIdempotencia.length() > LONGITUD_MAXIMA_CLAVE) {
+            throw new IllegalArgumentException("La cabecera Idempotency-Key debe tener entre 1 y " + LONGITUD_MAXIMA_CLAVE + " caracteres.");
+        }
+        String clave = solicitud.getClienteId() + ":" + claveIdempotencia;
+        String huella = calcularHuella(solicitud);
+
+        // 1. Respuesta reciente en memoria
+        EntradaCache entrada = leerCache(clave);
+        if (entrada != null) {
+            verificarHuella(entrada.huella(), huella);
+            logger.info("Idempotencia: respuesta repetida desde memoria para la clave {}", clave);
+            return new Resultado(entrada.pasajes(), true);
+        }
+
+        // 2. Si ya hay una ejecución en curso con la misma clave, se espera su resultado
+        CompletableFuture<List<PasajeResponseDTO>> propia = new CompletableFuture<>();
+        EjecucionEnCurso ejecucion = new EjecucionEnCurso(huella, propia);
+        EjecucionEnCurso existente = enCurso.putIfAbsent(clave, ejecucion);
+        if (existente != null) {
+            verificarHuella(existente.huella(), huella);
+            logger.info("Idempotencia: solicitud duplicada en curso para la clave {}, esperando el resultado.", clave);
+            return new Resultado(esperar(existente.resultado()), true);
+        }
+
+        try {
+            // 3. Respuesta guardada en la base de datos
+            RegistroIdempotencia registro = registroRepository.findById(clave).orElse(null);
+            if (registro != null) {
+                verificarHuella(registro.getHuellaSolicitud(), huella);
+                List<PasajeResponseDTO> pasajes = deserializar(registro.getRespuestaJson());
+                guardarCache(clave, huella, pasajes);
+                propia.complete(pasajes);
+                logger.info("Idempotencia: respuesta repetida desde la base de datos para la clave {}", clave);
+                return new Resultado(pasajes, true);
+            }
+
+            // 4. Primera ejecución
+            List<PasajeResponseDTO> pasajes = compra.get();
+            guardarRegistro(clave, huella, pasajes);
+            guardarCache(clave, huella, pasajes);
+            propia.complete(pasajes);
+            return new Resultado(pasajes, false);
+        } catch (RuntimeException e) {
+            propia.completeExceptionally(e);
+            throw e;
+        } finally {
+            enCurso.remove(clave, ejecucion);
+        }
+    }
+
+    // Cada hora se borran los registros persistidos vencidos
+    @Scheduled(fixedRate = 3600000)
+    public void limpiarRegistrosVencidos() {
+        LocalDateTime limite = LocalDateTime.now(ZoneOffset.UTC).minusHours(HORAS_VIGENCIA_REGISTRO);
+        int eliminados = registroRepository.eliminarAnterioresA(limite);
+        if (eliminados > 0) {
+            logger.info("Idempotencia: {} registros vencidos eliminados.", eliminados);
+        }
+        long ahora = System.currentTimeMillis();
+        synchronized (cache) {
+            cache.values().removeIf(e -> e.expiraEn() < ahora);
+        }
+    }
+
+    private EntradaCache leerCache(String clave) {
+        synchronized (cache) {
+            EntradaCache entrada = cache.get(clave);
+            if (entrada != null && entrada.expiraEn() < System.currentTimeMillis()) {
+                cache.remove(clave);
+                return null;
+            }
+            return entrada;
+        }
+    }
+
+    private void guardarCache(String clave, String huella, List<PasajeResponseDTO> pasajes) {
+        long expiraEn = System.currentTimeMillis() + MINUTOS_VIGENCIA_CACHE * 60_000;
+        synchronized (cache) {
+            cache.put(clave, new EntradaCache(huella, pasajes, expiraEn));
+        }
+    }
+
+    private void guardarRegistro(String clave, String huella, List<PasajeResponseDTO> pasajes) {
+        // La compra ya está confirmada: si falla el guardado del registro solo se pierde la protección ante reintentos tras un reinicio.
+        try {
+            registroRepository.save(RegistroIdempotencia.builder()
+                    .clave(clave)
+                    .huellaSolicitud(huella)
+                    .respuestaJson(objectMapper.writeValueAsString(pasajes))
+                    .fechaCreacion(LocalDateTime.now(ZoneOffset.UTC))
+                    .build());
+        } catch (Exception e) {
+            logger.error("Idempotencia: no se pudo guardar el registro de la clave {}: {}", clave, e.getMessage(), e);
+        }
+    }
+
+    private List<PasajeResponseDTO> deserializar(String json) {
+        try {
+            return objectMapper.readValue(json, new TypeReference<List<PasajeResponseDTO>>() {});
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("No se pudo leer la respuesta guardada para la clave de idempotencia.", e);
+        }
+    }
+
+    private List<PasajeResponseDTO> esperar(CompletableFuture<List<PasajeResponseDTO>> futuro) {
+        try {
+            return futuro.join();
+        } catch (CompletionException e) {
+            // La solicitud duplicada recibe el mismo error que la original
+            if (e.getCause() instanceof RuntimeException causa) {
+                throw causa;
+            }
+            throw e;
+        }
+    }
+
+    private static String calcularHuella(CompraMultiplePasajesRequestDTO solicitud) {
+        List<Integer> asientos = solicitud.getNumerosAsiento().stream().sorted().toList();
+        return solicitud.getViajeId() + "|" + asientos + "|" + solicitud.getPaypalTransactionId();
+    }
+
+    private static void verificarHuella(String huellaGuardada, String huellaActual) {
+        if (!huellaGuardada.equals(huellaActual)) {
+            throw new IllegalArgumentException("La clave de idempotencia ya se utilizó con una solicitud diferente.");
+        }
+    }
+
+    private record EntradaCache(String huella, List<PasajeResponseDTO> pasajes, long expiraEn) {
+    }
+
+    private record EjecucionEnCurso(String huella, CompletableFuture<List<PasajeResponseDTO>> resultado) {
+    }
+}
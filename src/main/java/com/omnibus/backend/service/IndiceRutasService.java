@@ -0,0 +1,387 @@
+package com.omnibus.backend.service;
+
+import com.omnibus.backend.dto.BusquedaViajesGeneralDTO;
+import com.omnibus.backend.dto.CambioAsientosDTO;
+import com.omnibus.backend.dto.ViajeConDisponibilidadDTO;
+import com.omnibus.backend.model.EstadoViaje;
+import com.omnibus.backend.model.Viaje;
+import com.omnibus.backend.repository.OrdenBusquedaViajes;
+import com.omnibus.backend.repository.ViajeRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Índice en memoria de los viajes PROGRAMADO y EN_CURSO agrupados por ruta (origen, destino).
+ * Cada ruta guarda un arreglo inmutable ordenado por fecha de salida; los rangos de fechas se
+ * resuelven con búsqueda binaria, así la búsqueda no depende del tamaño de la tabla de viajes.
+ * Los mismos viajes se agrupan también por ómnibus ({@link LineaTiempoBus}) para elegir el bus
+ * de un viaje nuevo sin consultar la base de datos por cada candidato.
+ * <p>
+ * Se carga al arrancar y se resincroniza cada 5 minutos. Entre tanto se actualiza de forma
+ * incremental: altas, reasignaciones y cambios de estado (tras el commit) y cambios de asientos
+ * (a partir de los eventos {@link CambioAsientosDTO}).
+ */
+@Service
+public class IndiceRutasService {
+
+    private static final Logger logger = LoggerFactory.getLogger(IndiceRutasService.class);
+    private static final Set<EstadoViaje> ESTADOS_INDEXADOS = EnumSet.of(EstadoViaje.PROGRAMADO, EstadoViaje.EN_CURSO);
+    static final Comparator<ViajeIndexado> POR_SALIDA =
+            Comparator.comparing((ViajeIndexado v) -> v.salida).thenComparing(v -> v.id);
+
+    private final ViajeRepository viajeRepository;
+    private final ApplicationEventPublisher eventPublisher;
+
+    // Los arreglos nunca se modifican: cada cambio publica uno nuevo (copy-on-write), así las lecturas no bloquean.
+    private volatile Map<RutaClave, ViajeIndexado[]> viajesPorRuta = new ConcurrentHashMap<>();
+    private volatile Map<Integer, ViajeIndexado> viajesPorId = new ConcurrentHashMap<>();
+    private volatile Map<Long, LineaTiempoBus> lineasPorBus = new ConcurrentHashMap<>();
+    private volatile boolean listo = false;
+
+    // Las escrituras (incluidos los cambios de asientos) se serializan. Durante una recarga completa,
+    // las altas y bajas se anotan para volver a aplicarlas sobre los mapas nuevos al final. Los cambios
+    // de asientos no se repiten (la consulta pudo haberlos visto ya): se anotan los viajes afectados y
+    // su contador se vuelve a leer de la BD después del cambio de mapas.
+    private final Object escritura = new Object();
+    private List<Runnable> cambiosDuranteRecarga = null;
+    private Set<Integer> asientosCambiadosDuranteRecarga = null;
+
+    @Autowired
+    public IndiceRutasService(ViajeRepository viajeRepository, ApplicationEventPublisher eventPublisher) {
+        this.viajeRepository = viajeRepository;
+        this.eventPublisher = eventPublisher;
+    }
+
+    /**
+     * Busca en el índice. Devuelve vacío si la consulta no se puede resolver desde memoria
+     * (índice aún no cargado, ruta no especificada por completo o estado no indexado);
+     * en ese caso hay que ir a la base de datos.
+     */
+    public Optional<List<ViajeConDisponibilidadDTO>> buscar(BusquedaViajesGeneralDTO criterios) {
+        if (!listo || criterios.getOrigenId() == null || criterios.getDestinoId() == null) {
+            return Optional.empty();
+        }
+        if (criterios.getEstado() != null && !ESTADOS_INDEXADOS.contains(criterios.getEstado())) {
+            return Optional.empty();
+        }
+
+        ViajeIndexado[] viajes = viajesPorRuta.get(new RutaClave(criterios.getOrigenId(), criterios.getDestinoId()));
+        if (viajes == null) {
+            return Optional.of(new ArrayList<>());
+        }
+
+        // Mismos límites que la consulta en BD: desde el inicio de fechaDesde hasta el inicio del día siguiente a fechaHasta
+        int desde = criterios.getFechaDesde() != null ? primerIndiceNoAnteriorA(viajes, criterios.getFechaDesde().atStartOfDay()) : 0;
+        int hasta = criterios.getFechaHasta() != null ? primerIndicePosteriorA(viajes, criterios.getFechaHasta().plusDays(1).atStartOfDay()) : viajes.length;
+
+        List<ViajeConDisponibilidadDTO> resultado = new ArrayList<>();
+        for (int i = desde; i < hasta; i++) {
+            ViajeIndexado viaje = viajes[i];
+            if (criterios.getEstado() != null && viaje.estado != criterios.getEstado()) {
+                continue;
+            }
+            int disponibles = viaje.asientosDisponibles.get();
+            if (criterios.getMinAsientosDisponibles() != null && disponibles < criterios.getMinAsientosDisponibles()) {
+                continue;
+            }
+            resultado.add(viaje.aDTO(disponibles));
+        }
+        ordenar(resultado, criterios.getSortBy(), criterios.getSortDir());
+        return Optional.of(resultado);
+    }
+
+    public boolean estaListo() {
+        return listo;
+    }
+
+    /**
+     * Foto de las rutas del índice agrupadas por localidad de origen: para cada origen, los arreglos
+     * (uno por destino) ordenados por salida. Los arreglos son inmutables, así que la foto puede
+     * recorrerse sin bloqueos mientras el índice sigue actualizándose.
+     * La usa la búsqueda de itinerarios con transbordos.
+     */
+    Map<Long, List<ViajeIndexado[]>> rutasPorOrigen() {
+        Map<Long, List<ViajeIndexado[]>> porOrigen = new HashMap<>();
+        viajesPorRuta.forEach((ruta, viajes) ->
+                porOrigen.computeIfAbsent(ruta.origenId(), o -> new ArrayList<>()).add(viajes));
+        return porOrigen;
+    }
+
+    /**
+     * Línea de tiempo de los viajes PROGRAMADO y EN_CURSO del ómnibus (vacía si no tiene ninguno).
+     * Solo tiene sentido si {@link #estaListo()}.
+     */
+    LineaTiempoBus lineaTiempo(Long busId) {
+        return lineasPorBus.getOrDefault(busId, LineaTiempoBus.VACIA);
+    }
+
+    // Viaje indexado por ID, o null si no está en el índice (no cargado o en un estado no indexado)
+    ViajeIndexado viajeIndexado(Integer viajeId) {
+        return viajesPorId.get(viajeId);
+    }
+
+    /**
+     * Actualiza el viaje en el índice una vez confirmada la transacción actual: lo agrega o lo
+     * reemplaza si está PROGRAMADO o EN_CURSO, y lo quita en cualquier otro estado.
+     * Los datos se copian de la entidad en el momento de la llamada.
+     */
+    public void actualizarTrasCommit(Viaje viaje) {
+        Integer viajeId = viaje.getId();
+        ViajeIndexado indexado = ESTADOS_INDEXADOS.contains(viaje.getEstado()) && viaje.getBusAsignado() != null
+                ? new ViajeIndexado(viaje) : null;
+        Runnable cambio = () -> aplicar(viajeId, indexado);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    cambio.run();
+                }
+            });
+        } else {
+            cambio.run();
+        }
+    }
+
+    // Antes que la caché de búsquedas, que invalida contando con que el índice ya tiene el cambio
+    @EventListener
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void alCambiarAsientos(CambioAsientosDTO cambio) {
+        synchronized (escritura) {
+            if (asientosCambiadosDuranteRecarga != null) {
+                asientosCambiadosDuranteRecarga.add(cambio.getViajeId());
+            }
+            ViajeIndexado viaje = viajesPorId.get(cambio.getViajeId());
+            if (viaje != null) {
+                aplicarCambioAsientos(viaje, cambio);
+            }
+        }
+    }
+
+    private static void aplicarCambioAsientos(ViajeIndexado viaje, CambioAsientosDTO cambio) {
+        int cantidad = cambio.getNumerosAsiento().size();
+        if (CambioAsientosDTO.TIPO_RECLAMADO.equals(cambio.getTipo())) {
+            viaje.asientosDisponibles.addAndGet(-cantidad);
+        } else if (CambioAsientosDTO.TIPO_LIBERADO.equals(cambio.getTipo())) {
+            viaje.asientosDisponibles.addAndGet(cantidad);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    public void cargarAlArrancar() {
+        recargar();
+    }
+
+    // Resincronización periódica: corrige cualquier desvío acumulado por las actualizaciones incrementales
+    @Scheduled(fixedRate = 300000, initialDelay = 300000)
+    @Transactional(readOnly = true)
+    public void resincronizar() {
+        recargar();
+    }
+
+    private void recargar() {
+        synchronized (escritura) {
+            cambiosDuranteRecarga = new ArrayList<>();
+            asientosCambiadosDuranteRecarga = new HashSet<>();
+        }
+        List<Viaje> viajes;
+        try {
+            viajes = viajeRepository.findByEstadoInConRelaciones(ESTADOS_INDEXADOS);
+        } catch (RuntimeException e) {
+            synchronized (escritura) {
+                cambiosDuranteRecarga = null;
+                asientosCambiadosDuranteRecarga = null;
+            }
+            throw e;
+        }
+
+        Map<Integer, ViajeIndexado> nuevosPorId = new ConcurrentHashMap<>();
+        Map<RutaClave, List<ViajeIndexado>> agrupados = new HashMap<>();
+        Map<Long, List<ViajeIndexado>> agrupadosPorBus = new HashMap<>();
+        for (Viaje viaje : viajes) {
+            ViajeIndexado indexado = new ViajeIndexado(viaje);
+            nuevosPorId.put(indexado.id, indexado);
+            agrupados.computeIfAbsent(indexado.ruta, r -> new ArrayList<>()).add(indexado);
+            agrupadosPorBus.computeIfAbsent(indexado.busId, b -> new ArrayList<>()).add(indexado);
+        }
+        Map<RutaClave, ViajeIndexado[]> nuevosPorRuta = new ConcurrentHashMap<>();
+        agrupados.forEach((ruta, lista) -> {
+            ViajeIndexado[] arreglo = lista.toArray(new ViajeIndexado[0]);
+            Arrays.sort(arreglo, POR_SALIDA);
+            nuevosPorRuta.put(ruta, arreglo);
+        });
+        Map<Long, LineaTiempoBus> nuevasLineas = new ConcurrentHashMap<>();
+        agrupadosPorBus.forEach((busId, lista) -> nuevasLineas.put(busId, LineaTiempoBus.de(lista)));
+
+        synchronized (escritura) {
+            viajesPorRuta = nuevosPorRuta;
+            viajesPorId = nuevosPorId;
+            lineasPorBus = nuevasLineas;
+            List<Runnable> pendientes = cambiosDuranteRecarga;
+            Set<Integer> conAsientosCambiados = asientosCambiadosDuranteRecarga;
+            cambiosDuranteRecarga = null;
+            asientosCambiadosDuranteRecarga = null;
+            pendientes.forEach(Runnable::run);
+            // Dentro del bloqueo: un cambio que llegue durante la lectura se aplica después, sobre el valor releído
+            if (!conAsientosCambiados.isEmpty()) {
+                releerAsientosDisponibles(conAsientosCambiados);
+            }
+            listo = true;
+        }
+        logger.info("Índice de rutas cargado: {} viajes en {} rutas.", nuevosPorId.size(), nuevosPorRuta.size());
+    }
+
+    private void releerAsientosDisponibles(Set<Integer> viajeIds) {
+        for (Object[] fila : viajeRepository.findAsientosDisponiblesByIdIn(viajeIds)) {
+            ViajeIndexado viaje = viajesPorId.get((Integer) fila[0]);
+            if (viaje != null) {
+                viaje.asientosDisponibles.set((Integer) fila[1]);
+            }
+        }
+    }
+
+    private void aplicar(Integer viajeId, ViajeIndexado nuevo) {
+        synchronized (escritura) {
+            if (cambiosDuranteRecarga != null) {
+                cambiosDuranteRecarga.add(() -> aplicar(viajeId, nuevo));
+            }
+            ViajeIndexado anterior = viajesPorId.remove(viajeId);
+            if (anterior != null) {
+                quitarDeRuta(anterior);
+                quitarDeLineaTiempo(anterior);
+            }
+            if (nuevo != null) {
+                viajesPorId.put(viajeId, nuevo);
+                agregarARuta(nuevo);
+                lineasPorBus.put(nuevo.busId, lineaTiempo(nuevo.busId).con(nuevo));
+            }
+            // Avisa a quien dependa del contenido de las rutas (por ejemplo, la caché de búsquedas)
+            if (anterior != null) {
+                eventPublisher.publishEvent(new RutaModificadaEvent(anterior.ruta.origenId(), anterior.ruta.destinoId(), anterior.salida));
+            }
+            if (nuevo != null) {
+                eventPublisher.publishEvent(new RutaModificadaEvent(nuevo.ruta.origenId(), nuevo.ruta.destinoId(), nuevo.salida));
+            }
+        }
+    }
+
+    private void agregarARuta(ViajeIndexado viaje) {
+        ViajeIndexado[] actuales = viajesPorRuta.getOrDefault(viaje.ruta, new ViajeIndexado[0]);
+        ViajeIndexado[] nuevos = Arrays.copyOf(actuales, actuales.length + 1);
+        int posicion = Arrays.binarySearch(actuales, viaje, POR_SALIDA);
+        int insercion = posicion >= 0 ? posicion : -(posicion + 1);
+        System.arraycopy(actuales, insercion, nuevos, insercion + 1, actuales.length - insercion);
+        nuevos[insercion] = viaje;
+        viajesPorRuta.put(viaje.ruta, nuevos);
+    }
+
+    private void quitarDeRuta(ViajeIndexado viaje) {
+        ViajeIndexado[] actuales = viajesPorRuta.get(viaje.ruta);
+        if (actuales == null) {
+            return;
+        }
+        ViajeIndexado[] nuevos = Arrays.stream(actuales).filter(v -> !v.id.equals(viaje.id)).toArray(ViajeIndexado[]::new);
+        if (nuevos.length == 0) {
+            viajesPorRuta.remove(viaje.ruta);
+        } else {
+            viajesPorRuta.put(viaje.ruta, nuevos);
+        }
+    }
+
+    private void quitarDeLineaTiempo(ViajeIndexado viaje) {
+        LineaTiempoBus linea = lineaTiempo(viaje.busId).sin(viaje.id);
+        if (linea.estaVacia()) {
+            lineasPorBus.remove(viaje.busId);
+        } else {
+            lineasPorBus.put(viaje.busId, linea);
+        }
+    }
+
+    // Primer índice con salida >= limite
+    static int primerIndiceNoAnteriorA(ViajeIndexado[] viajes, LocalDateTime limite) {
+        int bajo = 0, alto = viajes.length;
+        while (bajo < alto) {
+            int medio = (bajo + alto) >>> 1;
+            if (viajes[medio].salida.isBefore(limite)) {
+                bajo = medio + 1;
+            } else {
+                alto = medio;
+            }
+        }
+        return bajo;
+    }
+
+    // Primer índice con salida > limite
+    private static int primerIndicePosteriorA(ViajeIndexado[] viajes, LocalDateTime limite) {
+        int bajo = 0, alto = viajes.length;
+        while (bajo < alto) {
+            int medio = (bajo + alto) >>> 1;
+            if (viajes[medio].salida.isAfter(limite)) {
+                alto = medio;
+            } else {
+                bajo = medio + 1;
+            }
+        }
+        return bajo;
+    }
+
+    // Mismo criterio de orden que la consulta en BD (ViajeRepositoryCustomImpl), con el ID como desempate
+    private static void ordenar(List<ViajeConDisponibilidadDTO> viajes, String sortBy, String sortDir) {
+        viajes.sort(OrdenBusquedaViajes.desde(sortBy).comparador(OrdenBusquedaViajes.esDescendente(sortDir)));
+    }
+
+    record RutaClave(Long origenId, Long destinoId) {
+    }
+
+    // Visible en el paquete para la búsqueda de itinerarios; solo se lee fuera de esta clase
+    static final class ViajeIndexado {
+        final Integer id;
+        final RutaClave ruta;
+        final LocalDateTime salida;
+        final LocalDateTime llegada;
+        final String origenNombre;
+        final String destinoNombre;
+        final String matricula;
+        final Long busId;
+        final int capacidad;
+        final EstadoViaje estado;
+        final Double precio;
+        final AtomicInteger asientosDisponibles;
+
+        ViajeIndexado(Viaje viaje) {
+            this.id = viaje.getId();
+            this.ruta = new RutaClave(viaje.getOrigen().getId(), viaje.getDestino().getId());
+            this.salida = viaje.getFechaHoraSalida();
+            this.llegada = viaje.getFechaHoraLlegada();
+            this.origenNombre = viaje.getOrigen().getNombre();
+            this.destinoNombre = viaje.getDestino().getNombre();
+            this.matricula = viaje.getBusAsignado().getMatricula();
+            this.busId = viaje.getBusAsignado().getId();
+            this.capacidad = viaje.getBusAsignado().getCapacidadAsientos();
+            this.estado = viaje.getEstado();
+            this.precio = viaje.getPrecio();
+            this.asientosDisponibles = new AtomicInteger(viaje.getAsientosDisponibles());
+        }
+
+        ViajeConDisponibilidadDTO aDTO(int disponibles) {
+            return new ViajeConDisponibilidadDTO(id, salida, llegada, origenNombre, destinoNombre, matricula,
+                    capacidad, capacidad - disponibles, estado, precio);
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package com.omnibus.backend.service;
+
+import com.omnibus.backend.dto.CambioAsientosDTO;
+import com.omnibus.backend.model.EstadoPasaje;
+import com.omnibus.backend.model.Omnibus;
+import com.omnibus.backend.model.Viaje;
+import com.omnibus.backend.repository.PasajeRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Inventario en memoria de los asientos ocupados (VENDIDO o RESERVADO) de cada viaje activo.
+ * Cada viaje tiene un mapa de bits que se carga de forma perezosa desde la base de datos y
+ * permite reclamar asientos con operaciones CAS sin bloqueos, de modo que los conflictos se
+ * rechazan antes de ejecutar cualquier SQL. La base de datos sigue siendo la fuente de verdad:
+ * este inventario solo filtra de forma temprana los intentos que seguro fallarían.
+ * <p>
+ * También lleva una versión por viaje que cambia, una vez confirmada la transacción, con cada
+ * cambio en sus asientos. Sirve para el ETag del mapa de asientos. Cada cambio confirmado se
+ * publica además como {@link CambioAsientosDTO} para la transmisión en vivo por SSE.
+ * <p>
+ * Supone una sola instancia de la aplicación: el mapa y las versiones viven en la memoria de este
+ * proceso y no ven los cambios hechos por otra. Con varias instancias, el mapa es solo una pista
+ * (puede dejar pasar un asiento que otra instancia ya tomó) y quien decide es el índice único
+ * {@code ux_pasajes_asiento_activo}; los ETags y los eventos SSE, en cambio, dejarían de reflejar los
+ * cambios de las demás instancias.
+ */
+@Service
+public class InventarioAsientosService {
+
+    private static final Logger logger = LoggerFactory.getLogger(InventarioAsientosService.class);
+    private static final List<EstadoPasaje> ESTADOS_OCUPADOS = List.of(EstadoPasaje.VENDIDO, EstadoPasaje.RESERVADO);
+    private static final long MINUTOS_INACTIVIDAD_DESCARTE = 30;
+
+    private final PasajeRepository pasajeRepository;
+    private final ApplicationEventPublisher publicadorEventos;
+    private final Map<Integer, MapaAsientos> mapasPorViaje = new ConcurrentHashMap<>();
+
+    // Las versiones salen de una secuencia global, así nunca se repiten aunque se descarte la de un viaje.
+    // El instante de arranque distingue los ETags emitidos antes de un reinicio.
+    private final long instanteArranque = System.currentTimeMillis();
+    private final AtomicLong secuenciaVersiones = new AtomicLong();
+    // Solo tienen entrada los viajes con cambios recientes; el resto está en la versión base.
+    private final Map<Integer, Long> versionesPorViaje = new ConcurrentHashMap<>();
+    private volatile long versionBase = 0;
+
+    @Autowired
+    public InventarioAsientosService(PasajeRepository pasajeRepository,
+                                     ApplicationEventPublisher publicadorEventos) {
+        this.pasajeRepository = pasajeRepository;
+        this.publicadorEventos = publicadorEventos;
+    }
+
+    /**
+     * Reclama todos los asientos indicados dentro de la transacción actual. Si la transacción
+     * termina sin confirmarse, los asientos se liberan automáticamente.
+     *
+     * @throws IllegalArgumentException si algún número de asiento está fuera de la capacidad del bus.
+     * @throws IllegalStateException si algún asiento ya está ocupado.
+     */
+    public void reclamarAsientosEnTransaccion(Viaje viaje, Collection<Integer> numerosAsiento) {
+        Integer conflicto = reclamarAsientos(viaje, numerosAsiento);
+        if (conflicto != null) {
+            logger.warn("Inventario: asiento {} del viaje ID {} rechazado en memoria por estar ocupado.", conflicto, viaje.getId());
+            throw new IllegalStateException("El asiento " + conflicto + " ya no está disponible.");
+        }
+        List<Integer> reclamados = new ArrayList<>(numerosAsiento);
+        Integer viajeId = viaje.getId();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status != STATUS_COMMITTED) {
+                        // Nadie llegó a ver estos asientos como ocupados: se liberan sin publicar cambios
+                        logger.debug("Inventario: transacción revertida, liberando asientos {} del viaje ID {}.", reclamados, viajeId);
+                        liberarEnMapa(viajeId, reclamados);
+                    } else {
+                        registrarCambio(viajeId, CambioAsientosDTO.TIPO_RECLAMADO, reclamados);
+                    }
+                }
+            });
+        } else {
+            registrarCambio(viajeId, CambioAsientosDTO.TIPO_RECLAMADO, reclamados);
+        }
+    }
+
+    /**
+     * Publica, una vez confirmada la transacción, que las reservas de esos asientos pasaron a VENDIDO.
+     * La ocupación no cambia, pero sí la versión del viaje.
+     */
+    public void notificarConfirmacionTrasCommit(Integer viajeId, Collection<Integer> numerosAsiento) {
+        List<Integer> asientos = new ArrayList<>(numerosAsiento);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    registrarCambio(viajeId, CambioAsientosDTO.TIPO_CONFIRMADO, asientos);
+                }
+            });
+        } else {
+            registrarCambio(viajeId, CambioAsientosDTO.TIPO_CONFIRMADO, asientos);
+        }
+    }
+
+    /**
+     * Libera los asientos una vez confirmada la transacción actual (o de inmediato si no hay una activa).
+     */
+    public void liberarAsientosTrasCommit(Integer viajeId, Collection<Integer> numerosAsiento) {
+        List<Integer> asientos = new ArrayList<>(numerosAsiento);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    liberarAsientos(viajeId, asientos);
+                }
+            });
+        } else {
+            liberarAsientos(viajeId, asientos);
+        }
+    }
+
+    /**
+     * Intenta reclamar todos los asientos de forma atómica (todos o ninguno).
+     *
+     * @return null si se reclamaron todos, o el número del primer asiento que ya estaba ocupado.
+     */
+    public Integer reclamarAsientos(Viaje viaje, Collection<Integer> numerosAsiento) {
+        MapaAsientos mapa = obtenerMapa(viaje);
+        for (Integer numero : numerosAsiento) {
+            if (numero == null || numero < 1 || numero > mapa.capacidad) {
+                throw new IllegalArgumentException("Número de asiento " + numero + " es inválido.");
+            }
+        }
+        List<Integer> reclamados = new ArrayList<>(numerosAsiento.size());
+        for (Integer numero : numerosAsiento) {
+            if (!mapa.reclamar(numero)) {
+                reclamados.forEach(mapa::liberar);
+                return numero;
+            }
+            reclamados.add(numero);
+        }
+        return null;
+    }
+
+    public void liberarAsientos(Integer viajeId, Collection<Integer> numerosAsiento) {
+        liberarEnMapa(viajeId, numerosAsiento);
+        registrarCambio(viajeId, CambioAsientosDTO.TIPO_LIBERADO, new ArrayList<>(numerosAsiento));
+    }
+
+    private void liberarEnMapa(Integer viajeId, Collection<Integer> numerosAsiento) {
+        MapaAsientos mapa = mapasPorViaje.get(viajeId);
+        if (mapa == null) {
+            return; // Se cargará desde la BD la próxima vez que se necesite.
+        }
+        for (Integer numero : numerosAsiento) {
+            if (numero != null && numero >= 1 && numero <= mapa.capacidad) {
+                mapa.liberar(numero);
+            }
+        }
+    }
+
+    /**
+     * Descarta el mapa de un viaje (por ejemplo, si cambió el bus asignado o si dejó de venderse)
+     * una vez confirmada la transacción actual. La próxima consulta lo vuelve a cargar desde la base de datos.
+     */
+    public void invalidar(Integer viajeId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    descartarMapa(viajeId);
+                }
+            });
+        } else {
+            descartarMapa(viajeId);
+        }
+    }
+
+    /**
+     * Versión actual de los asientos del viaje. Cambia cada vez que se confirma un cambio en sus asientos
+     * o en el propio viaje (reasignación, cambio de estado). Los viajes sin cambios registrados (o ya
+     * descartados por inactivos) devuelven la versión base sin guardar nada, así IDs inexistentes
+     * no hacen crecer el mapa.
+     */
+    public long versionAsientos(Integer viajeId) {
+        return versionesPorViaje.getOrDefault(viajeId, versionBase);
+    }
+
+    /**
+     * ETag fuerte del mapa de asientos del viaje, calculable sin tocar la base de datos.
+     */
+    public String etagAsientos(Integer viajeId) {
+        return "\"" + instanteArranque + "-" + viajeId + "-" + versionAsientos(viajeId) + "\"";
+    }
+
+    private void descartarMapa(Integer viajeId) {
+        if (mapasPorViaje.remove(viajeId) != null) {
+            logger.debug("Inventario: mapa de asientos del viaje ID {} descartado.", viajeId);
+        }
+        registrarCambio(viajeId, CambioAsientosDTO.TIPO_ACTUALIZADO, List.of());
+    }
+
+    private void registrarCambio(Integer viajeId, String tipo, List<Integer> numerosAsiento) {
+        long version = secuenciaVersiones.incrementAndGet();
+        versionesPorViaje.put(viajeId, version);
+        publicadorEventos.publishEvent(new CambioAsientosDTO(viajeId, tipo, numerosAsiento, version));
+    }
+
+    @Scheduled(fixedRate = 600000)
+    public void descartarMapasInactivos() {
+        long limite = System.currentTimeMillis() - MINUTOS_INACTIVIDAD_DESCARTE * 60_000;
+        mapasPorViaje.entrySet().removeIf(entry -> entry.getValue().ultimoAcceso < limite);
+
+        // Las versiones de los viajes sin mapa cargado pasan a la versión base. La base nueva es mayor o
+        // igual que todas las versiones descartadas, así que ningún ETag viejo vuelve a coincidir con
+        // contenido distinto; las entradas que cambian mientras tanto se conservan (removeIf compara el valor).
+        long base = secuenciaVersiones.get();
+        versionBase = base;
+        versionesPorViaje.entrySet().removeIf(entry -> entry.getValue() <= base && !mapasPorViaje.containsKey(entry.getKey()));
+    }
+
+    private MapaAsientos obtenerMapa(Viaje viaje) {
+        Integer viajeId = viaje.getId();
+        MapaAsientos mapa = mapasPorViaje.get(viajeId);
+        if (mapa == null) {
+            // Se carga fuera del mapa concurrente para no retener su lock durante la consulta;
+            // si otro hilo lo cargó a la vez, se usa el que quedó guardado
+            long versionAntes = versionAsientos(viajeId);
+            MapaAsientos cargado = cargarMapa(viaje);
+            MapaAsientos existente = mapasPorViaje.putIfAbsent(viajeId, cargado);
+            mapa = existente != null ? existente : cargado;
+            if (existente == null && versionAsientos(viajeId) != versionAntes) {
+                // Hubo un cambio (o una invalidación) mientras se cargaba: la próxima consulta lo vuelve a leer
+                mapasPorViaje.remove(viajeId, cargado);
+            }
+        }
+        mapa.ultimoAcceso = System.currentTimeMillis();
+        return mapa;
+    }
+
+    private MapaAsientos cargarMapa(Viaje viaje) {
+        Omnibus bus = viaje.getBusAsignado();
+        if (bus == null) {
+            throw new IllegalStateException("El viaje ID " + viaje.getId() + " no tiene un ómnibus asignado.");
+        }
+        MapaAsientos mapa = new MapaAsientos(bus.getCapacidadAsientos());
+        List<Integer> ocupados = pasajeRepository.findNumerosAsientoByViajeIdAndEstadoIn(viaje.getId(), ESTADOS_OCUPADOS);
+        for (Integer numero : ocupados) {
+            if (numero != null && numero >= 1 && numero <= mapa.capacidad) {
+                mapa.reclamar(numero);
+            }
+        }
+        logger.debug("Inventario: cargado mapa del viaje ID {} ({} de {} asientos ocupados).", viaje.getId(), ocupados.size(), mapa.capacidad);
+        return mapa;
+    }
+
+    /**
+     * Mapa de bits de asientos: el bit (n - 1) representa al asiento n.
+     */
+    static final class MapaAsientos {
+        private final int capacidad;
+        private final AtomicLongArray bloques;
+        private volatile long ultimoAcceso = System.currentTimeMillis();
+
+        MapaAsientos(int capacidad) {
+            this.capacidad = capacidad;
+            this.bloques = new AtomicLongArray((capacidad + 63) >>> 6);
+        }
+
+        boolean reclamar(int numeroAsiento) {
+            int indice = (numeroAsiento - 1) >>> 6;
+            long mascara = 1L << ((numeroAsiento - 1) & 63);
+            while (true) {
+                long actual = bloques.get(indice);
+                if ((actual & mascara) != 0) {
+                    return false;
+                }
+                if (bloques.compareAndSet(indice, actual, actual | mascara)) {
+                    return true;
+                }
+            }
+        }
+
+        void liberar(int numeroAsiento) {
+            int indice = (numeroAsiento - 1) >>> 6;
+            long mascara = 1L << ((numeroAsiento - 1) & 63);
+            while (true) {
+                long actual = bloques.get(indice);
+                if ((actual & mascara) == 0 || bloques.compareAndSet(indice, actual, actual & ~mascara)) {
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.omnibus.backend.service;
+
+import com.omnibus.backend.dto.ItinerarioDTO;
+import com.omnibus.backend.dto.ViajeConDisponibilidadDTO;
+import com.omnibus.backend.model.EstadoViaje;
+import com.omnibus.backend.service.IndiceRutasService.ViajeIndexado;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+
+/**
+ * Búsqueda de itinerarios con transbordos (hasta 2) sobre el índice de rutas en memoria.
+ * <p>
+ * Para cada viaje que sale del origen en la fecha pedida se hace una búsqueda de llegada más
+ * temprana por rondas, al estilo RAPTOR: la ronda k agrega el k-ésimo tramo partiendo de las
+ * localidades alcanzadas en la ronda anterior, respetando el tiempo mínimo de conexión. Como cada
+ * ruta del índice está ordenada por salida, el primer viaje utilizable se encuentra con búsqueda
+ * binaria. Los itinerarios dominados (salen antes, llegan después y con más transbordos que otro)
+ * se descartan y el resto se ordena por llegada, transbordos y precio.
+ * No se hace ninguna consulta a la base de datos.
+ */
+@Service
+public class ItinerarioService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ItinerarioService.class);
+    private static final ZoneId ZONA_HORARIA_URUGUAY = ZoneId.of("America/Montevideo");
+    private static final Duration MIN_CONEXION = Duration.ofMinutes(30);
+    private static final Duration MAX_DURACION_ITINERARIO = Duration.ofHours(48);
+    private static final int MAX_TRANSBORDOS = 2;
+    private static final int MAX_RESULTADOS = 10;
+
+    private final IndiceRutasService indiceRutasService;
+
+    @Autowired
+    public ItinerarioService(IndiceRutasService indiceRutasService) {
+        this.indiceRutasService = indiceRutasService;
+    }
+
+    /**
+     * Busca itinerarios que salen del origen en la fecha indicada (desde ahora, si es hoy) y llegan al destino.
+     *
+     * @param pasajeros      asientos libres que debe tener cada tramo (1 si es null).
+     * @param maxTransbordos máximo de transbordos, entre 0 y 2 (2 si es null).
+     * @throws IllegalArgumentException si los parámetros no son válidos.
+     * @throws IllegalStateException    si el índice de rutas todavía no terminó de cargarse.
+     */
+    public List<ItinerarioDTO> buscarItinerarios(Long origenId, Long destinoId, LocalDate fecha,
+                                                 Integer pasajeros, Integer maxTransbordos) {
+        if (origenId == null || destinoId == null || fecha == null) {
+            throw new IllegalArgumentException("El origen, el destino y la fecha son obligatorios.");
+        }
+        if (origenId.equals(destinoId)) {
+            throw new IllegalArgumentException("El origen y el destino deben ser distintos.");
+        }
+        int cantidadPasajeros = pasajeros != null ? pasajeros : 1;
+        if (cantidadPasajeros < 1) {
+            throw new IllegalArgumentException("La cantidad de pasajeros debe ser al menos 1.");
+        }
+        int transbordosPermitidos = maxTransbordos != null ? maxTransbordos : MAX_TRANSBORDOS;
+        if (transbordosPermitidos < 0 || transbordosPermitidos > MAX_TRANSBORDOS) {
+            throw new IllegalArgumentException("La cantidad máxima de transbordos debe estar entre 0 y " + MAX_TRANSBORDOS + ".");
+        }
+        if (!indiceRutasService.estaListo()) {
+            throw new IllegalStateException("El índice de viajes se está cargando. Intente nuevamente en unos segundos.");
+        }
+
+        LocalDateTime ahora = LocalDateTime.now(ZONA_HORARIA_URUGUAY);
+        LocalDateTime desde = fecha.atStartOfDay().isBefore(ahora) ? ahora : fecha.atStartOfDay();
+        LocalDateTime hasta = fecha.plusDays(1).atStartOfDay();
+        if (!desde.isBefore(hasta)) {
+            return new ArrayList<>();
+        }
+
+        Map<Long, List<ViajeIndexado[]>> rutas = indiceRutasService.rutasPorOrigen();
+        List<Etiqueta> encontrados = new ArrayList<>();
+        for (ViajeIndexado[] ruta : rutas.getOrDefault(origenId, List.of())) {
+            for (int i = IndiceRutasService.primerIndiceNoAnteriorA(ruta, desde); i < ruta.length && ruta[i].salida.isBefore(hasta); i++) {
+                if (utilizable(ruta[i], cantidadPasajeros)) {
+                    buscarDesde(ruta[i], origenId, destinoId, transbordosPermitidos + 1, cantidadPasajeros, rutas, encontrados);
+                }
+            }
+        }
+
+        List<ItinerarioDTO> itinerarios = descartarDominados(encontrados).stream()
+                .map(this::aItinerario)
+                .sorted(Comparator.comparing(ItinerarioDTO::getLlegada)
+                        .thenComparingInt(ItinerarioDTO::getTransbordos)
+                        .thenComparing(ItinerarioDTO::getPrecioTotal))
+                .limit(MAX_RESULTADOS)
+                .toList();
+        logger.debug("Itinerarios de {} a {} el {}: {} encontrados ({} evaluados).",
+                origenId, destinoId, fecha, itinerarios.size(), encontrados.size());
+        return itinerarios;
+    }
+
+    /**
+     * Búsqueda de llegada más temprana con el primer tramo fijo. Agrega a {@code encontrados} el mejor
+     * itinerario por cada cantidad de tramos que mejore la llegada al destino.
+     */
+    private void buscarDesde(ViajeIndexado primero, Long origenId, Long destinoId, int maxTramos, int pasajeros,
+                             Map<Long, List<ViajeIndexado[]>> rutas, List<Etiqueta> encontrados) {
+        Etiqueta inicial = new Etiqueta(primero, null, 1);
+        Long primeraParada = primero.ruta.destinoId();
+        if (primeraParada.equals(destinoId)) {
+            encontrados.add(inicial);
+            return;
+        }
+
+        LocalDateTime limite = primero.salida.plus(MAX_DURACION_ITINERARIO);
+        LocalDateTime mejorAlDestino = null;
+        Map<Long, LocalDateTime> mejorLlegada = new HashMap<>();
+        mejorLlegada.put(primeraParada, primero.llegada);
+        Map<Long, Etiqueta> marcadas = Map.of(primeraParada, inicial);
+
+        for (int tramos = 2; tramos <= maxTramos && !marcadas.isEmpty(); tramos++) {
+            Map<Long, Etiqueta> nuevas = new HashMap<>();
+            for (Map.Entry<Long, Etiqueta> parada : marcadas.entrySet()) {
+                Etiqueta anterior = parada.getValue();
+                LocalDateTime listoParaSalir = anterior.viaje().llegada.plus(MIN_CONEXION);
+                for (ViajeIndexado[] ruta : rutas.getOrDefault(parada.getKey(), List.of())) {
+                    Long siguiente = ruta[0].ruta.destinoId();
+                    if (siguiente.equals(origenId)) {
+                        continue;
+                    }
+                    // Solo sirve llegar antes que la mejor llegada conocida a esa parada y al destino
+                    LocalDateTime cota = minimo(minimo(limite, mejorLlegada.get(siguiente)), mejorAlDestino);
+                    for (int i = IndiceRutasService.primerIndiceNoAnteriorA(ruta, listoParaSalir);
+                         i < ruta.length && ruta[i].salida.isBefore(cota); i++) {
+                        ViajeIndexado viaje = ruta[i];
+                        // Se recorre más de un viaje porque uno que sale después puede llegar antes
+                        if (viaje.llegada.isBefore(cota) && utilizable(viaje, pasajeros)) {
+                            cota = viaje.llegada;
+                            mejorLlegada.put(siguiente, viaje.llegada);
+                            nuevas.put(siguiente, new Etiqueta(viaje, anterior, tramos));
+                        }
+                    }
+                }
+            }
+            Etiqueta alDestino = nuevas.remove(destinoId);
+            if (alDestino != null) {
+                encontrados.add(alDestino);
+                mejorAlDestino = alDestino.viaje().llegada;
+            }
+            marcadas = nuevas;
+        }
+    }
+
+    // Un itinerario domina a otro si sale igual o después, llega igual o antes y no tiene más transbordos
+    private static List<Etiqueta> descartarDominados(List<Etiqueta> candidatos) {
+        List<Etiqueta> resultado = new ArrayList<>();
+        for (Etiqueta candidato : candidatos) {
+            boolean dominado = false;
+            for (Etiqueta otro : candidatos) {
+                if (otro != candidato && domina(otro, candidato)) {
+                    dominado = true;
+                    break;
+                }
+            }
+            if (!dominado) {
+                resultado.add(candidato);
+            }
+        }
+        return resultado;
+    }
+
+    private static boolean domina(Etiqueta a, Etiqueta b) {
+        int salida = a.salida().compareTo(b.salida());
+        int llegada = a.viaje().llegada.compareTo(b.viaje().llegada);
+        if (salida < 0 || llegada > 0 || a.tramos() > b.tramos()) {
+            return false;
+        }
+        return salida > 0 || llegada < 0 || a.tramos() < b.tramos();
+    }
+
+    private ItinerarioDTO aItinerario(Etiqueta ultima) {
+        LinkedList<ViajeConDisponibilidadDTO> tramos = new LinkedList<>();
+        double precioTotal = 0;
+        int asientos = Integer.MAX_VALUE;
+        for (Etiqueta etiqueta = ultima; etiqueta != null; etiqueta = etiqueta.anterior()) {
+            int disponibles = etiqueta.viaje().asientosDisponibles.get();
+            tramos.addFirst(etiqueta.viaje().aDTO(disponibles));
+            precioTotal += etiqueta.viaje().precio != null ? etiqueta.viaje().precio : 0;
+            asientos = Math.min(asientos, disponibles);
+        }
+        LocalDateTime salida = tramos.getFirst().getFechaSalida();
+        LocalDateTime llegada = tramos.getLast().getFechaLlegada();
+        return new ItinerarioDTO(new ArrayList<>(tramos), tramos.size() - 1, salida, llegada,
+                Duration.between(salida, llegada).toMinutes(), precioTotal, asientos);
+    }
+
+    private static boolean utilizable(ViajeIndexado viaje, int pasajeros) {
+        return viaje.estado == EstadoViaje.PROGRAMADO && viaje.asientosDisponibles.get() >= pasajeros;
+    }
+
+    private static LocalDateTime minimo(LocalDateTime a, LocalDateTime b) {
+        if (a == null) {
+            return b;
+        }
+        return b == null || a.isBefore(b) ? a : b;
+    }
+
+    // Tramo alcanzado en una ronda, enlazado con el tramo anterior del itinerario
+    private record Etiqueta(ViajeIndexado viaje, Etiqueta anterior, int tramos) {
+
+        LocalDateTime salida() {
+            Etiqueta primera = this;
+            while (primera.anterior != null) {
+                primera = primera.anterior;
+            }
+            return primera.viaje.salida;
+        }
+    }
+}
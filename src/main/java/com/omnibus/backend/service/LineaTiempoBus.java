@@ -0,0 +1,85 @@
+package com.omnibus.backend.service;
+
+import com.omnibus.backend.model.EstadoViaje;
+import com.omnibus.backend.service.IndiceRutasService.ViajeIndexado;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Línea de tiempo inmutable de los viajes PROGRAMADO y EN_CURSO de un ómnibus, ordenada por salida.
+ * Funciona como un árbol de intervalos aplanado: además del arreglo ordenado se guarda, para cada
+ * posición, cuál de los viajes hasta ahí llega más tarde. Con eso las consultas de solapamiento,
+ * viaje anterior y próximo viaje se resuelven con una búsqueda binaria.
+ * <p>
+ * Cada cambio crea una línea nueva (copy-on-write), igual que las rutas de {@link IndiceRutasService}.
+ */
+final class LineaTiempoBus {
+
+    static final LineaTiempoBus VACIA = new LineaTiempoBus(new ViajeIndexado[0]);
+
+    private final ViajeIndexado[] viajes;
+    // indiceLlegadaMaxima[i]: posición del viaje que llega más tarde entre viajes[0..i]
+    private final int[] indiceLlegadaMaxima;
+
+    private LineaTiempoBus(ViajeIndexado[] ordenados) {
+        this.viajes = ordenados;
+        this.indiceLlegadaMaxima = new int[ordenados.length];
+        for (int i = 0; i < ordenados.length; i++) {
+            int anterior = i > 0 ? indiceLlegadaMaxima[i - 1] : i;
+            indiceLlegadaMaxima[i] = ordenados[i].llegada.isAfter(ordenados[anterior].llegada) ? i : anterior;
+        }
+    }
+
+    static LineaTiempoBus de(List<ViajeIndexado> viajes) {
+        ViajeIndexado[] arreglo = viajes.toArray(new ViajeIndexado[0]);
+        Arrays.sort(arreglo, IndiceRutasService.POR_SALIDA);
+        return new LineaTiempoBus(arreglo);
+    }
+
+    LineaTiempoBus con(ViajeIndexado viaje) {
+        ViajeIndexado[] nuevos = Arrays.copyOf(viajes, viajes.length + 1);
+        int posicion = Arrays.binarySearch(viajes, viaje, IndiceRutasService.POR_SALIDA);
+        int insercion = posicion >= 0 ? posicion : -(posicion + 1);
+        System.arraycopy(viajes, insercion, nuevos, insercion + 1, viajes.length - insercion);
+        nuevos[insercion] = viaje;
+        return new LineaTiempoBus(nuevos);
+    }
+
+    LineaTiempoBus sin(Integer viajeId) {
+        return new LineaTiempoBus(Arrays.stream(viajes).filter(v -> !v.id.equals(viajeId)).toArray(ViajeIndexado[]::new));
+    }
+
+    boolean estaVacia() {
+        return viajes.length == 0;
+    }
+
+    /**
+     * Algún viaje que se superpone con el intervalo (inicio, fin), o null si no hay.
+     * Mismo criterio que ViajeRepository.findOverlappingTrips: salida &lt; fin y llegada &gt; inicio.
+     */
+    ViajeIndexado solapadoCon(LocalDateTime inicio, LocalDateTime fin) {
+        ViajeIndexado candidato = ultimoEnLlegarAntesDe(fin);
+        return candidato != null && candidato.llegada.isAfter(inicio) ? candidato : null;
+    }
+
+    /**
+     * De los viajes que salen antes de {@code fin}, el que llega más tarde; null si no hay.
+     * Si el intervalo no tiene solapamientos, es el último viaje que el bus hace antes de él.
+     */
+    ViajeIndexado ultimoEnLlegarAntesDe(LocalDateTime fin) {
+        int ultimo = IndiceRutasService.primerIndiceNoAnteriorA(viajes, fin) - 1;
+        return ultimo >= 0 ? viajes[indiceLlegadaMaxima[ultimo]] : null;
+    }
+
+    // Primer viaje PROGRAMADO que sale en {@code desde} o después; null si no hay
+    ViajeIndexado proximoProgramadoDesde(LocalDateTime desde) {
+        for (int i = IndiceRutasService.primerIndiceNoAnteriorA(viajes, desde); i < viajes.length; i++) {
+            if (viajes[i].estado == EstadoViaje.PROGRAMADO) {
+                return viajes[i];
+            }
+        }
+        return null;
+    }
+}
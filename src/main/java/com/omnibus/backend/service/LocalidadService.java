@@ -2,6 +2,8 @@
 package com.omnibus.backend.service;
 
 import com.omnibus.backend.dto.CreateLocalidadDTO;
+import com.omnibus.backend.dto.LocalidadDTO;
+import com.omnibus.backend.dto.SugerenciaLocalidadDTO;
 import com.omnibus.backend.model.Localidad;
 import com.omnibus.backend.repository.LocalidadRepository;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -15,10 +17,13 @@ import java.util.Optional; // Para el ejemplo de obtenerPorId
 public class LocalidadService { // Es una CLASE
 
     private final LocalidadRepository localidadRepository;
+    private final SugerenciaLocalidadesService sugerenciaLocalidadesService;
 
     @Autowired
-    public LocalidadService(LocalidadRepository localidadRepository) {
+    public LocalidadService(LocalidadRepository localidadRepository,
+                            SugerenciaLocalidadesService sugerenciaLocalidadesService) {
         this.localidadRepository = localidadRepository;
+        this.sugerenciaLocalidadesService = sugerenciaLocalidadesService;
     }
 
     @Transactional
@@ -33,7 +38,10 @@ public class LocalidadService { // Es una CLASE
         nuevaLocalidad.setDepartamento(createLocalidadDTO.getDepartamento().trim());
         nuevaLocalidad.setDireccion(createLocalidadDTO.getDireccion().trim());
 
-        return localidadRepository.save(nuevaLocalidad);
+        Localidad guardada = localidadRepository.save(nuevaLocalidad);
+        // El alta por CSV también pasa por aquí, así que el autocompletado se actualiza en ambos casos
+        sugerenciaLocalidadesService.agregarTrasCommit(guardada);
+        return guardada;
     }
 
     // --- MÉTODO NECESARIO PARA LISTAR TODAS LAS LOCALIDADES ---
@@ -41,11 +49,20 @@ public class LocalidadService { // Es una CLASE
      * Obtiene una lista de todas las localidades existentes.
      * @return Lista de objetos Localidad.
      */
-    public List<Localidad> obtenerTodasLasLocalidades() {
-        return localidadRepository.findAll(); // JpaRepository ya provee este método
+    @Transactional(readOnly = true)
+    public List<LocalidadDTO> obtenerTodasLasLocalidades() {
+        return localidadRepository.findAllResponse(); // Proyección a DTO, sin entidades administradas
     }
     // ------------------------------------------------------
 
+    /**
+     * Sugerencias de autocompletado para el texto ingresado, resueltas desde memoria.
+     * @return Como mucho {@code limite} localidades que coinciden con la consulta.
+     */
+    public List<SugerenciaLocalidadDTO> sugerirLocalidades(String consulta, Integer limite) {
+        return sugerenciaLocalidadesService.sugerir(consulta, limite);
+    }
+
     // Ejemplo de otro método que podrías tener (opcional)
     public Optional<Localidad> obtenerLocalidadPorId(Long id) {
         return localidadRepository.findById(id);
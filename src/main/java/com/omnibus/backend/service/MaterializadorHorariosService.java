@@ -0,0 +1,176 @@
+package com.omnibus.backend.service;
+
+import com.omnibus.backend.dto.ResultadoLoteViajesDTO;
+import com.omnibus.backend.dto.ViajeRequestDTO;
+import com.omnibus.backend.model.Horario;
+import com.omnibus.backend.repository.HorarioRepository;
+import com.omnibus.backend.repository.ViajeRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Mantiene generados los viajes de los horarios recurrentes para los próximos {@value #DIAS_HORIZONTE} días.
+ * <p>
+ * Trabaja por tandas de {@value #DIAS_POR_TANDA} días, cada una en su propia transacción: junta los
+ * viajes que faltan de todos los horarios en esa ventana y los crea con la asignación de buses en lote
+ * de {@link ViajeService#crearViajesEnLote(List, List)}, partidos en lotes de como mucho
+ * {@link ViajeService#MAX_VIAJES_POR_LOTE} salidas. Cada horario recuerda hasta qué día ya se generó,
+ * así en régimen normal cada pasada solo agrega el día nuevo que entra en el horizonte. Si una salida
+ * queda sin bus, el horario no avanza más allá del día anterior y esa salida se reintenta en las
+ * tandas y pasadas siguientes.
+ * <p>
+ * Es idempotente: antes de generar se descartan las salidas que ya tienen viaje, y un índice único
+ * (horario_id, fecha_hora_salida) impide duplicados aunque dos ejecuciones se crucen.
+ */
+@Service
+public class MaterializadorHorariosService {
+
+    private static final Logger logger = LoggerFactory.getLogger(MaterializadorHorariosService.class);
+    private static final ZoneId ZONA_HORARIA_URUGUAY = ZoneId.of("America/Montevideo");
+    static final int DIAS_HORIZONTE = 60;
+    static final int DIAS_POR_TANDA = 7;
+
+    private final HorarioRepository horarioRepository;
+    private final ViajeRepository viajeRepository;
+    private final ViajeService viajeService;
+    private final TransactionTemplate transactionTemplate;
+
+    @Autowired
+    public MaterializadorHorariosService(HorarioRepository horarioRepository,
+                                         ViajeRepository viajeRepository,
+                                         ViajeService viajeService,
+                                         TransactionTemplate transactionTemplate) {
+        this.horarioRepository = horarioRepository;
+        this.viajeRepository = viajeRepository;
+        this.viajeService = viajeService;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    // Cada 10 minutos; los horarios nuevos quedan generados en la primera pasada después del alta
+    @Scheduled(fixedDelay = 600000, initialDelay = 60000)
+    public void materializarHorarios() {
+        LocalDate hoy = LocalDate.now(ZONA_HORARIA_URUGUAY);
+        LocalDate horizonte = hoy.plusDays(DIAS_HORIZONTE);
+        for (LocalDate desde = hoy; !desde.isAfter(horizonte); desde = desde.plusDays(DIAS_POR_TANDA)) {
+            LocalDate hasta = desde.plusDays(DIAS_POR_TANDA - 1);
+            LocalDate inicioTanda = desde;
+            LocalDate finTanda = hasta.isAfter(horizonte) ? horizonte : hasta;
+            try {
+                transactionTemplate.executeWithoutResult(status -> materializarTanda(hoy, inicioTanda, finTanda));
+            } catch (Exception e) {
+                // La tanda se revierte completa y se reintenta en la próxima pasada
+                logger.error("Error al generar los viajes de los horarios entre {} y {}: {}", inicioTanda, finTanda, e.getMessage(), e);
+                return;
+            }
+        }
+    }
+
+    private void materializarTanda(LocalDate hoy, LocalDate desde, LocalDate hasta) {
+        List<Horario> horarios = horarioRepository.findPendientesDeMaterializar(hasta);
+        if (horarios.isEmpty()) {
+            return;
+        }
+
+        // Cada horario retoma desde el día siguiente al último generado, aunque sea anterior a la tanda:
+        // así se reintentan las salidas que antes quedaron sin bus
+        Map<Long, LocalDate> primerDiaPorHorario = new HashMap<>();
+        LocalDate inicioConsulta = desde;
+        for (Horario horario : horarios) {
+            LocalDate primerDia = horario.getMaterializadoHasta() != null && !horario.getMaterializadoHasta().isBefore(hoy)
+                    ? horario.getMaterializadoHasta().plusDays(1) : hoy;
+            primerDiaPorHorario.put(horario.getId(), primerDia);
+            if (primerDia.isBefore(inicioConsulta)) {
+                inicioConsulta = primerDia;
+            }
+        }
+
+        Set<String> yaGeneradas = new HashSet<>();
+        List<Long> horarioIds = horarios.stream().map(Horario::getId).toList();
+        for (Object[] fila : viajeRepository.findSalidasGeneradasPorHorarios(horarioIds, inicioConsulta.atStartOfDay(), hasta.plusDays(1).atStartOfDay())) {
+            yaGeneradas.add(fila[0] + "|" + fila[1]);
+        }
+
+        LocalDateTime ahora = LocalDateTime.now(ZONA_HORARIA_URUGUAY);
+        List<SalidaPendiente> pendientes = new ArrayList<>();
+        for (Horario horario : horarios) {
+            for (LocalDate dia = primerDiaPorHorario.get(horario.getId()); !dia.isAfter(hasta); dia = dia.plusDays(1)) {
+                LocalDateTime salida = dia.atTime(horario.getHoraSalida());
+                if (horario.saleEl(dia.getDayOfWeek()) && !salida.isBefore(ahora)
+                        && !yaGeneradas.contains(horario.getId() + "|" + salida)) {
+                    pendientes.add(new SalidaPendiente(horario, dia, salida));
+                }
+            }
+        }
+        pendientes.sort(Comparator.comparing(SalidaPendiente::salida));
+
+        // Se crean en lotes que respetan el máximo de crearViajesEnLote, en orden de salida
+        Map<Long, LocalDate> primerRechazoPorHorario = new HashMap<>();
+        Map<String, Integer> rechazosPorMotivo = new HashMap<>();
+        int creados = 0;
+        int busesUtilizados = 0;
+        for (int inicio = 0; inicio < pendientes.size(); inicio += ViajeService.MAX_VIAJES_POR_LOTE) {
+            List<SalidaPendiente> lote = pendientes.subList(inicio, Math.min(inicio + ViajeService.MAX_VIAJES_POR_LOTE, pendientes.size()));
+            List<ViajeRequestDTO> solicitudes = new ArrayList<>(lote.size());
+            List<Horario> origenes = new ArrayList<>(lote.size());
+            for (SalidaPendiente pendiente : lote) {
+                Horario horario = pendiente.horario();
+                ViajeRequestDTO solicitud = new ViajeRequestDTO();
+                solicitud.setFecha(pendiente.dia());
+                solicitud.setHoraSalida(horario.getHoraSalida());
+                solicitud.setHoraLlegada(horario.getHoraLlegada());
+                solicitud.setOrigenId(horario.getOrigen().getId());
+                solicitud.setDestinoId(horario.getDestino().getId());
+                solicitud.setPrecio(horario.getPrecio());
+                solicitudes.add(solicitud);
+                origenes.add(horario);
+            }
+            ResultadoLoteViajesDTO resultado = viajeService.crearViajesEnLote(solicitudes, origenes);
+            resultado.getRechazados().forEach((posicion, motivo) -> {
+                SalidaPendiente rechazada = lote.get(posicion);
+                logger.debug("Horario ID {}: no se generó el viaje del {} a las {}: {}.",
+                        rechazada.horario().getId(), rechazada.dia(), rechazada.horario().getHoraSalida(), motivo);
+                rechazosPorMotivo.merge(motivo, 1, Integer::sum);
+                primerRechazoPorHorario.merge(rechazada.horario().getId(), rechazada.dia(),
+                        (actual, nuevo) -> nuevo.isBefore(actual) ? nuevo : actual);
+            });
+            creados += resultado.getCreados().size();
+            busesUtilizados += resultado.getBusesUtilizados();
+        }
+
+        // Un horario con salidas sin bus solo avanza hasta el día anterior a la primera de ellas
+        for (Horario horario : horarios) {
+            LocalDate primerRechazo = primerRechazoPorHorario.get(horario.getId());
+            horario.setMaterializadoHasta(primerRechazo != null ? primerRechazo.minusDays(1) : hasta);
+        }
+        horarioRepository.saveAll(horarios);
+
+        // Un solo aviso por tanda (el detalle por salida queda en DEBUG): sin flota suficiente, las mismas
+        // salidas se reintentan en cada pasada
+        if (!rechazosPorMotivo.isEmpty()) {
+            logger.warn("Horarios: {} salidas sin generar entre {} y {}, se reintentan en la próxima pasada. Motivos: {}",
+                    rechazosPorMotivo.values().stream().mapToInt(Integer::intValue).sum(), inicioConsulta, hasta, rechazosPorMotivo);
+        }
+        if (!pendientes.isEmpty()) {
+            logger.info("Horarios: {} viajes generados entre {} y {} ({} horarios con salidas sin bus), {} buses utilizados.",
+                    creados, inicioConsulta, hasta, primerRechazoPorHorario.size(), busesUtilizados);
+        }
+    }
+
+    private record SalidaPendiente(Horario horario, LocalDate dia, LocalDateTime salida) {
+    }
+}
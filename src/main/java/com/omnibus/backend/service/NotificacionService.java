@@ -15,6 +15,7 @@ import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.List;
 import java.util.Locale;
 
 @Service
@@ -28,6 +29,19 @@ public class NotificacionService {
     private NotificacionRepository notificacionRepository;
 
     public void crearNotificacionRecordatorioViaje(Pasaje pasaje) {
+        notificacionRepository.save(recordatorioViaje(pasaje));
+        // Opcional: puedes añadir un log aquí también si quieres
+        // logger.info("Notificación web de recordatorio creada para usuario ID {}", pasaje.getCliente().getId());
+    }
+
+    /**
+     * Crea los recordatorios de viaje de varios pasajes con un solo saveAll (una transacción).
+     */
+    public void crearNotificacionesRecordatorioViaje(List<Pasaje> pasajes) {
+        notificacionRepository.saveAll(pasajes.stream().map(this::recordatorioViaje).toList());
+    }
+
+    private Notificacion recordatorioViaje(Pasaje pasaje) {
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM HH:mm");
         String fechaHoraFormateada = pasaje.getDatosViaje().getFechaHoraSalida().format(formatter);
 
@@ -37,17 +51,13 @@ public class NotificacionService {
                 fechaHoraFormateada
         );
 
-        Notificacion notificacion = Notificacion.builder()
+        return Notificacion.builder()
                 .usuario(pasaje.getCliente())
                 .mensaje(mensaje)
                 .fechaCreacion(LocalDateTime.now())
                 .leida(false)
                 .link("/mis-viajes") // Puedes añadir un link si quieres
                 .build();
-
-        notificacionRepository.save(notificacion);
-        // Opcional: puedes añadir un log aquí también si quieres
-        // logger.info("Notificación web de recordatorio creada para usuario ID {}", pasaje.getCliente().getId());
     }
 
     public void crearNotificacionDevolucion(Pasaje pasaje, double montoReembolsado) {
@@ -1,6 +1,7 @@
 package com.omnibus.backend.service;
 
 import com.omnibus.backend.dto.CreateOmnibusDTO;
+import com.omnibus.backend.dto.OmnibusResponseDTO;
 import com.omnibus.backend.dto.OmnibusStatsDTO;
 import com.omnibus.backend.exception.BusConViajesAsignadosException;
 import com.omnibus.backend.model.*;
@@ -57,8 +58,10 @@ public class OmnibusService {
         return omnibusRepository.save(nuevoOmnibus);
     }
 
-    public List<Omnibus> obtenerTodosLosOmnibus() {
-        return omnibusRepository.findAll();
+    // Proyección a DTO: una consulta con la localidad actual incluida, sin cargas LAZY por ómnibus
+    @Transactional(readOnly = true)
+    public List<OmnibusResponseDTO> obtenerTodosLosOmnibus() {
+        return omnibusRepository.findAllResponse();
     }
 
     public Optional<Omnibus> obtenerOmnibusPorId(Long id) {
@@ -0,0 +1,139 @@
+package com.omnibus.backend.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Algoritmos de la carga de viajes en lote (sin acceso a datos).
+ * <ul>
+ *     <li>Encadena los viajes nuevos en la menor cantidad posible de cadenas que un mismo bus puede
+ *     recorrer: es una cobertura mínima por caminos del grafo "j puede seguir a i", que se obtiene
+ *     como n menos el emparejamiento máximo del grafo bipartito asociado.</li>
+ *     <li>El emparejamiento máximo (Hopcroft-Karp) se usa también para repartir las cadenas entre los buses.</li>
+ * </ul>
+ */
+final class PlanificadorLoteViajes {
+
+    private PlanificadorLoteViajes() {
+    }
+
+    record Tramo(LocalDateTime salida, LocalDateTime llegada, Long origenId, Long destinoId) {
+    }
+
+    /**
+     * Agrupa los tramos en la menor cantidad de cadenas. El tramo j puede seguir al i si sale desde
+     * donde llega el i y con al menos {@code bufferMismaLocalidad} de diferencia.
+     *
+     * @return las cadenas como listas de índices de {@code tramos}, cada una ordenada por salida,
+     * y las cadenas ordenadas por la salida de su primer tramo.
+     */
+    static List<List<Integer>> cadenasMinimas(List<Tramo> tramos, Duration bufferMismaLocalidad) {
+        int n = tramos.size();
+        List<List<Integer>> sucesores = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            Tramo anterior = tramos.get(i);
+            LocalDateTime listoParaSalir = anterior.llegada().plus(bufferMismaLocalidad);
+            List<Integer> posibles = new ArrayList<>();
+            for (int j = 0; j < n; j++) {
+                Tramo siguiente = tramos.get(j);
+                if (anterior.destinoId().equals(siguiente.origenId()) && !listoParaSalir.isAfter(siguiente.salida())) {
+                    posibles.add(j);
+                }
+            }
+            sucesores.add(posibles);
+        }
+
+        int[] siguiente = emparejamientoMaximo(n, n, sucesores);
+        boolean[] tieneAnterior = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            if (siguiente[i] >= 0) {
+                tieneAnterior[siguiente[i]] = true;
+            }
+        }
+        List<List<Integer>> cadenas = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            if (tieneAnterior[i]) {
+                continue;
+            }
+            List<Integer> cadena = new ArrayList<>();
+            for (int actual = i; actual >= 0; actual = siguiente[actual]) {
+                cadena.add(actual);
+            }
+            cadenas.add(cadena);
+        }
+        cadenas.sort(Comparator.comparing((List<Integer> c) -> tramos.get(c.get(0)).salida()));
+        return cadenas;
+    }
+
+    /**
+     * Emparejamiento máximo en un grafo bipartito (Hopcroft-Karp).
+     *
+     * @param adyacencia para cada nodo de la izquierda, los nodos de la derecha con los que puede emparejarse.
+     * @return para cada nodo de la izquierda, el de la derecha asignado o -1.
+     */
+    static int[] emparejamientoMaximo(int cantidadIzquierda, int cantidadDerecha, List<List<Integer>> adyacencia) {
+        int[] parejaIzquierda = new int[cantidadIzquierda];
+        int[] parejaDerecha = new int[cantidadDerecha];
+        Arrays.fill(parejaIzquierda, -1);
+        Arrays.fill(parejaDerecha, -1);
+        int[] distancia = new int[cantidadIzquierda];
+
+        while (construirNiveles(adyacencia, parejaIzquierda, parejaDerecha, distancia)) {
+            for (int u = 0; u < cantidadIzquierda; u++) {
+                if (parejaIzquierda[u] < 0) {
+                    aumentar(u, adyacencia, parejaIzquierda, parejaDerecha, distancia);
+                }
+            }
+        }
+        return parejaIzquierda;
+    }
+
+    // BFS desde los nodos libres de la izquierda; true si existe algún camino de aumento
+    private static boolean construirNiveles(List<List<Integer>> adyacencia, int[] parejaIzquierda,
+                                            int[] parejaDerecha, int[] distancia) {
+        ArrayDeque<Integer> cola = new ArrayDeque<>();
+        for (int u = 0; u < parejaIzquierda.length; u++) {
+            if (parejaIzquierda[u] < 0) {
+                distancia[u] = 0;
+                cola.add(u);
+            } else {
+                distancia[u] = Integer.MAX_VALUE;
+            }
+        }
+        boolean hayCamino = false;
+        while (!cola.isEmpty()) {
+            int u = cola.poll();
+            for (int v : adyacencia.get(u)) {
+                int w = parejaDerecha[v];
+                if (w < 0) {
+                    hayCamino = true;
+                } else if (distancia[w] == Integer.MAX_VALUE) {
+                    distancia[w] = distancia[u] + 1;
+                    cola.add(w);
+                }
+            }
+        }
+        return hayCamino;
+    }
+
+    // DFS por los niveles del BFS; si encuentra un camino de aumento lo aplica
+    private static boolean aumentar(int u, List<List<Integer>> adyacencia, int[] parejaIzquierda,
+                                    int[] parejaDerecha, int[] distancia) {
+        for (int v : adyacencia.get(u)) {
+            int w = parejaDerecha[v];
+            if (w < 0 || (distancia[w] == distancia[u] + 1 && aumentar(w, adyacencia, parejaIzquierda, parejaDerecha, distancia))) {
+                parejaIzquierda[u] = v;
+                parejaDerecha[v] = u;
+                return true;
+            }
+        }
+        // Sin camino desde u en esta fase: se lo saca de los niveles
+        distancia[u] = Integer.MAX_VALUE;
+        return false;
+    }
+}
@@ -20,16 +20,26 @@ public class PrecioService {
     public double calcularPrecioFinal(double precioBase, Usuario usuario) {
         // Verifica si el usuario es una instancia de Cliente (o tu entidad específica que tiene tipoCliente)
         if (usuario instanceof Cliente) {
-            TipoCliente tipo = ((Cliente) usuario).getTipo();
-
-            // Aplica el descuento si el tipo es JUBILADO o ESTUDIANTE
-            if (tipo == TipoCliente.JUBILADO || tipo == TipoCliente.ESTUDIANTE) {
-                double descuento = precioBase * TASA_DESCUENTO;
-                return precioBase - descuento;
-            }
+            return calcularPrecioFinal(precioBase, ((Cliente) usuario).getTipo());
         }
 
         // Si no es un cliente elegible, devuelve el precio base sin cambios
         return precioBase;
     }
+
+    /**
+     * Calcula el precio final para un tipo de cliente, sin necesitar el usuario.
+     * Se usa cuando se muestran precios a alguien que todavía no compra (por ejemplo, en el calendario).
+     * @param precioBase El precio original del viaje.
+     * @param tipo El tipo de cliente; null se trata como COMUN.
+     * @return El precio final con el descuento aplicado.
+     */
+    public double calcularPrecioFinal(double precioBase, TipoCliente tipo) {
+        // Aplica el descuento si el tipo es JUBILADO o ESTUDIANTE
+        if (tipo == TipoCliente.JUBILADO || tipo == TipoCliente.ESTUDIANTE) {
+            double descuento = precioBase * TASA_DESCUENTO;
+            return precioBase - descuento;
+        }
+        return precioBase;
+    }
 }
\ No newline at end of file
@@ -1,8 +1,5 @@
 package com.omnibus.backend.service;
 
-import com.omnibus.backend.model.EstadoPasaje;
-import com.omnibus.backend.model.Pasaje;
-import com.omnibus.backend.model.Viaje;
 import com.omnibus.backend.repository.PasajeRepository;
 import com.omnibus.backend.repository.ViajeRepository;
 import org.slf4j.Logger;
@@ -11,8 +8,11 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -21,43 +21,73 @@ import java.util.stream.Collectors;
 public class ReservasCleanupService {
 
     private static final Logger logger = LoggerFactory.getLogger(ReservasCleanupService.class);
-    private static final int MINUTOS_EXPIRACION = 10;
+    static final int MINUTOS_EXPIRACION = 10;
+    private static final int TAMANO_LOTE_LIMPIEZA = 500;
 
     @Autowired
     private PasajeRepository pasajeRepository;
     @Autowired
     private ViajeRepository viajeRepository;
+    @Autowired
+    private InventarioAsientosService inventarioAsientosService;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
 
-    // Se ejecuta cada minuto (60000 milisegundos)
-    @Scheduled(fixedRate = 60000)
+    /**
+     * Libera en bloque las reservas indicadas que ya hayan vencido (las dispara ExpiracionReservasService
+     * en cuanto vence cada una). Un solo DELETE ... RETURNING y un UPDATE del contador por viaje afectado.
+     * @return la cantidad de reservas efectivamente liberadas.
+     */
     @Transactional
+    public int liberarReservas(Collection<Integer> pasajeIds) {
+        // fechaReserva se guarda en UTC, por eso el límite también se calcula en UTC
+        LocalDateTime limite = LocalDateTime.now(ZoneOffset.UTC).minusMinutes(MINUTOS_EXPIRACION);
+        List<Object[]> liberados = pasajeRepository.eliminarReservasExpiradasPorIds(pasajeIds, limite);
+        devolverAsientos(liberados);
+        return liberados.size();
+    }
+
+    // Red de seguridad: las reservas se liberan al vencer desde la cola de ExpiracionReservasService.
+    // Este barrido solo recoge las que se hayan escapado (por ejemplo, si falló un lote). Cada 5 minutos.
+    // Trabaja por lotes, cada uno en su propia transacción, para que tras una caída con miles de
+    // reservas vencidas no se arme una única transacción gigante.
+    @Scheduled(fixedRate = 300000)
     public void limpiarReservasExpiradas() {
         logger.info("--- Iniciando tarea de limpieza de reservas expiradas ---");
-        LocalDateTime tiempoExpiracion = LocalDateTime.now().minusMinutes(MINUTOS_EXPIRACION);
+        LocalDateTime tiempoExpiracion = LocalDateTime.now(ZoneOffset.UTC).minusMinutes(MINUTOS_EXPIRACION);
 
-        List<Pasaje> reservasExpiradas = pasajeRepository.findByEstadoAndFechaReservaBefore(EstadoPasaje.RESERVADO, tiempoExpiracion);
+        int totalLiberadas = 0;
+        int liberadasEnLote;
+        do {
+            Integer resultado = transactionTemplate.execute(status -> {
+                List<Object[]> liberados = pasajeRepository.eliminarLoteReservasExpiradas(tiempoExpiracion, TAMANO_LOTE_LIMPIEZA);
+                devolverAsientos(liberados);
+                return liberados.size();
+            });
+            liberadasEnLote = resultado != null ? resultado : 0;
+            totalLiberadas += liberadasEnLote;
+        } while (liberadasEnLote == TAMANO_LOTE_LIMPIEZA);
 
-        if (reservasExpiradas.isEmpty()) {
+        if (totalLiberadas == 0) {
             logger.info("No se encontraron reservas expiradas.");
-            return;
+        } else {
+            logger.warn("Se limpiaron {} reservas expiradas.", totalLiberadas);
         }
+        logger.info("--- Tarea de limpieza de reservas finalizada ---");
+    }
 
-        logger.warn("Se encontraron {} reservas expiradas para limpiar.", reservasExpiradas.size());
-
-        // Agrupamos los pasajes por viaje para actualizar el contador de asientos eficientemente
-        Map<Viaje, Long> conteoPorViaje = reservasExpiradas.stream()
-                .collect(Collectors.groupingBy(Pasaje::getDatosViaje, Collectors.counting()));
-
-        // Eliminamos los pasajes expirados
-        pasajeRepository.deleteAll(reservasExpiradas);
+    /**
+     * Devuelve al contador y al inventario en memoria los asientos de las filas [viaje_id, numero_asiento] eliminadas.
+     */
+    private void devolverAsientos(List<Object[]> filasEliminadas) {
+        Map<Integer, List<Integer>> asientosPorViaje = filasEliminadas.stream()
+                .collect(Collectors.groupingBy(fila -> ((Number) fila[0]).intValue(),
+                        Collectors.mapping(fila -> ((Number) fila[1]).intValue(), Collectors.toList())));
 
-        // Actualizamos el contador de asientos disponibles para cada viaje afectado
-        conteoPorViaje.forEach((viaje, cantidad) -> {
-            logger.info("Liberando {} asientos para el viaje ID {}", cantidad, viaje.getId());
-            viaje.setAsientosDisponibles(viaje.getAsientosDisponibles() + cantidad.intValue());
-            viajeRepository.save(viaje);
+        asientosPorViaje.forEach((viajeId, asientos) -> {
+            logger.info("Liberando {} asientos para el viaje ID {}", asientos.size(), viajeId);
+            viajeRepository.incrementarAsientosDisponibles(viajeId, asientos.size());
+            inventarioAsientosService.liberarAsientosTrasCommit(viajeId, asientos);
         });
-
-        logger.info("--- Tarea de limpieza de reservas finalizada ---");
     }
 }
\ No newline at end of file
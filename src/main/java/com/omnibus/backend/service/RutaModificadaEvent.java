@@ -0,0 +1,10 @@
+package com.omnibus.backend.service;
+
+import java.time.LocalDateTime;
+
+/**
+ * Evento que publica {@link IndiceRutasService} cuando un viaje entra, sale o cambia en una ruta
+ * (alta, reasignación o cambio de estado). Lleva la ruta y la salida del viaje afectado.
+ */
+public record RutaModificadaEvent(Long origenId, Long destinoId, LocalDateTime salida) {
+}
@@ -0,0 +1,212 @@
+package com.omnibus.backend.service;
+
+import com.omnibus.backend.dto.LocalidadDTO;
+import com.omnibus.backend.dto.SugerenciaLocalidadDTO;
+import com.omnibus.backend.model.Localidad;
+import com.omnibus.backend.repository.LocalidadRepository;
+import com.omnibus.backend.repository.ViajeRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Autocompletado de localidades desde memoria. Las palabras del nombre y del departamento se guardan
+ * normalizadas (sin tildes y en minúsculas) en un trie donde cada nodo conoce las localidades que
+ * tienen alguna palabra con ese prefijo. Si un término no tiene coincidencias por prefijo, se
+ * tolera un error de tipeo (distancia de edición 1).
+ * <p>
+ * Las sugerencias se ordenan por cantidad de viajes que salen o llegan a la localidad.
+ * El trie se arma al arrancar y se amplía con cada localidad creada (individual o por CSV);
+ * los volúmenes de viajes se recalculan cada hora.
+ */
+@Service
+public class SugerenciaLocalidadesService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SugerenciaLocalidadesService.class);
+    private static final int LIMITE_POR_DEFECTO = 8;
+    private static final int LIMITE_MAXIMO = 20;
+    private static final int LONGITUD_MINIMA_APROXIMADA = 3;
+    private static final int DISTANCIA_MAXIMA = 1;
+
+    private final LocalidadRepository localidadRepository;
+    private final ViajeRepository viajeRepository;
+
+    // Los hijos y los conjuntos de IDs son concurrentes: las altas se hacen sin bloquear las lecturas
+    private final Nodo raiz = new Nodo();
+    private final Map<Long, Entrada> localidades = new ConcurrentHashMap<>();
+    private volatile Map<Long, Long> viajesPorLocalidad = Map.of();
+
+    @Autowired
+    public SugerenciaLocalidadesService(LocalidadRepository localidadRepository, ViajeRepository viajeRepository) {
+        this.localidadRepository = localidadRepository;
+        this.viajeRepository = viajeRepository;
+    }
+
+    /**
+     * Devuelve como mucho {@code limite} localidades cuyas palabras empiezan con los términos buscados
+     * (todos deben coincidir). Sin términos, devuelve una lista vacía.
+     */
+    public List<SugerenciaLocalidadDTO> sugerir(String consulta, Integer limite) {
+        int cantidad = limite != null ? Math.max(1, Math.min(limite, LIMITE_MAXIMO)) : LIMITE_POR_DEFECTO;
+        String normalizada = normalizar(consulta);
+        String[] terminos = palabras(normalizada);
+        if (terminos.length == 0) {
+            return new ArrayList<>();
+        }
+
+        Set<Long> candidatos = null;
+        for (String termino : terminos) {
+            Set<Long> coincidencias = buscarPorPrefijo(termino);
+            if (coincidencias.isEmpty() && termino.length() >= LONGITUD_MINIMA_APROXIMADA) {
+                coincidencias = buscarAproximado(termino);
+            }
+            if (candidatos == null) {
+                candidatos = new HashSet<>(coincidencias);
+            } else {
+                candidatos.retainAll(coincidencias);
+            }
+            if (candidatos.isEmpty()) {
+                return new ArrayList<>();
+            }
+        }
+
+        Map<Long, Long> volumenes = viajesPorLocalidad;
+        Comparator<Entrada> orden = Comparator
+                // Primero las que empiezan exactamente con lo escrito
+                .comparing((Entrada e) -> !e.nombreNormalizado().startsWith(normalizada))
+                .thenComparing(e -> -volumenes.getOrDefault(e.id(), 0L))
+                .thenComparing(Entrada::nombreNormalizado);
+        return candidatos.stream()
+                .map(localidades::get)
+                .filter(Objects::nonNull)
+                .sorted(orden)
+                .limit(cantidad)
+                .map(e -> new SugerenciaLocalidadDTO(e.id(), e.nombre(), e.departamento()))
+                .toList();
+    }
+
+    /**
+     * Agrega la localidad al índice una vez confirmada la transacción actual (o de inmediato si no hay una activa).
+     */
+    public void agregarTrasCommit(Localidad localidad) {
+        LocalidadDTO datos = new LocalidadDTO(localidad.getId(), localidad.getNombre(), localidad.getDepartamento(), localidad.getDireccion());
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    agregar(datos);
+                }
+            });
+        } else {
+            agregar(datos);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void cargarAlArrancar() {
+        List<LocalidadDTO> todas = localidadRepository.findAllResponse();
+        todas.forEach(this::agregar);
+        actualizarVolumenes();
+        logger.info("Índice de sugerencias de localidades cargado con {} localidades.", todas.size());
+    }
+
+    @Scheduled(fixedRate = 3600000, initialDelay = 3600000)
+    public void actualizarVolumenes() {
+        Map<Long, Long> volumenes = new HashMap<>();
+        for (Object[] fila : viajeRepository.contarViajesPorOrigen()) {
+            volumenes.merge((Long) fila[0], (Long) fila[1], Long::sum);
+        }
+        for (Object[] fila : viajeRepository.contarViajesPorDestino()) {
+            volumenes.merge((Long) fila[0], (Long) fila[1], Long::sum);
+        }
+        viajesPorLocalidad = volumenes;
+    }
+
+    private void agregar(LocalidadDTO localidad) {
+        Entrada entrada = new Entrada(localidad.getId(), localidad.getNombre(), localidad.getDepartamento(),
+                normalizar(localidad.getNombre()));
+        if (localidades.putIfAbsent(entrada.id(), entrada) != null) {
+            return;
+        }
+        Set<String> tokens = new HashSet<>(Arrays.asList(palabras(entrada.nombreNormalizado())));
+        tokens.addAll(Arrays.asList(palabras(normalizar(localidad.getDepartamento()))));
+        for (String token : tokens) {
+            Nodo nodo = raiz;
+            for (int i = 0; i < token.length(); i++) {
+                nodo = nodo.hijos.computeIfAbsent(token.charAt(i), c -> new Nodo());
+                nodo.ids.add(entrada.id());
+            }
+        }
+    }
+
+    private Set<Long> buscarPorPrefijo(String prefijo) {
+        Nodo nodo = raiz;
+        for (int i = 0; i < prefijo.length() && nodo != null; i++) {
+            nodo = nodo.hijos.get(prefijo.charAt(i));
+        }
+        return nodo != null ? nodo.ids : Set.of();
+    }
+
+    // Recorre el trie con la fila de Levenshtein: un nodo coincide si su prefijo está a distancia <= 1 del término
+    private Set<Long> buscarAproximado(String termino) {
+        Set<Long> resultado = new HashSet<>();
+        int[] filaInicial = new int[termino.length() + 1];
+        for (int i = 0; i < filaInicial.length; i++) {
+            filaInicial[i] = i;
+        }
+        raiz.hijos.forEach((letra, hijo) -> recorrerAproximado(hijo, letra, termino, filaInicial, resultado));
+        return resultado;
+    }
+
+    private void recorrerAproximado(Nodo nodo, char letra, String termino, int[] filaAnterior, Set<Long> resultado) {
+        int columnas = termino.length() + 1;
+        int[] fila = new int[columnas];
+        fila[0] = filaAnterior[0] + 1;
+        int minimo = fila[0];
+        for (int i = 1; i < columnas; i++) {
+            int costo = termino.charAt(i - 1) == letra ? 0 : 1;
+            fila[i] = Math.min(Math.min(fila[i - 1] + 1, filaAnterior[i] + 1), filaAnterior[i - 1] + costo);
+            minimo = Math.min(minimo, fila[i]);
+        }
+        if (fila[columnas - 1] <= DISTANCIA_MAXIMA) {
+            resultado.addAll(nodo.ids);
+        } else if (minimo <= DISTANCIA_MAXIMA) {
+            nodo.hijos.forEach((siguiente, hijo) -> recorrerAproximado(hijo, siguiente, termino, fila, resultado));
+        }
+    }
+
+    // Sin tildes ni diacríticos y en minúsculas: "Paysandú" -> "paysandu"
+    static String normalizar(String texto) {
+        if (texto == null) {
+            return "";
+        }
+        return Normalizer.normalize(texto, Normalizer.Form.NFD)
+                .replaceAll("\\p{M}", "")
+                .toLowerCase(Locale.ROOT)
+                .trim();
+    }
+
+    private static String[] palabras(String normalizado) {
+        return Arrays.stream(normalizado.split("[^a-z0-9]+"))
+                .filter(p -> !p.isEmpty())
+                .toArray(String[]::new);
+    }
+
+    private static final class Nodo {
+        private final Map<Character, Nodo> hijos = new ConcurrentHashMap<>();
+        private final Set<Long> ids = ConcurrentHashMap.newKeySet();
+    }
+
+    private record Entrada(Long id, String nombre, String departamento, String nombreNormalizado) {
+    }
+}
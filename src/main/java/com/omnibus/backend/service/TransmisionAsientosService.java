@@ -0,0 +1,217 @@
+package com.omnibus.backend.service;
+
+import com.omnibus.backend.dto.CambioAsientosDTO;
+import com.omnibus.backend.model.EstadoPasaje;
+import com.omnibus.backend.repository.PasajeRepository;
+import com.omnibus.backend.repository.ViajeRepository;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityNotFoundException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Transmite por Server-Sent Events los cambios de asientos de cada viaje a los clientes que
+ * están eligiendo asiento. Cada cambio confirmado llega una sola vez (como {@link CambioAsientosDTO})
+ * y se reparte a los suscriptores del viaje, en lugar de que cada cliente consulte la BD periódicamente.
+ * <p>
+ * Cada suscriptor tiene un buffer acotado; si un cliente lento lo llena, se lo desconecta para que
+ * no retenga memoria ni frene al resto. El envío lo hace un pool pequeño de hilos propio.
+ */
+@Service
+public class TransmisionAsientosService {
+
+    private static final Logger logger = LoggerFactory.getLogger(TransmisionAsientosService.class);
+    private static final List<EstadoPasaje> ESTADOS_OCUPADOS = List.of(EstadoPasaje.VENDIDO, EstadoPasaje.RESERVADO);
+    private static final long TIMEOUT_CONEXION_MS = 30 * 60_000L;
+    private static final int CAPACIDAD_BUFFER_SUSCRIPTOR = 64;
+    private static final int MAX_SUSCRIPTORES_POR_VIAJE = 1000;
+    private static final int HILOS_ENVIO = 4;
+    private static final Object LATIDO = new Object();
+
+    private final ViajeRepository viajeRepository;
+    private final PasajeRepository pasajeRepository;
+    private final InventarioAsientosService inventarioAsientosService;
+
+    private final Map<Integer, Set<Suscriptor>> suscriptoresPorViaje = new ConcurrentHashMap<>();
+    private final ExecutorService hilosEnvio;
+
+    @Autowired
+    public TransmisionAsientosService(ViajeRepository viajeRepository,
+                                      PasajeRepository pasajeRepository,
+                                      InventarioAsientosService inventarioAsientosService) {
+        this.viajeRepository = viajeRepository;
+        this.pasajeRepository = pasajeRepository;
+        this.inventarioAsientosService = inventarioAsientosService;
+        AtomicInteger contador = new AtomicInteger();
+        this.hilosEnvio = Executors.newFixedThreadPool(HILOS_ENVIO, tarea -> {
+            Thread hilo = new Thread(tarea, "sse-asientos-" + contador.incrementAndGet());
+            hilo.setDaemon(true);
+            return hilo;
+        });
+    }
+
+    /**
+     * Suscribe un cliente a los cambios de asientos del viaje. El primer evento es siempre un
+     * SNAPSHOT con los asientos ocupados; después llegan solo los cambios.
+     *
+     * @throws EntityNotFoundException si el viaje no existe.
+     * @throws IllegalStateException si el viaje ya tiene el máximo de suscriptores.
+     */
+    public SseEmitter suscribir(Integer viajeId) {
+        if (!viajeRepository.existsById(viajeId)) {
+            throw new EntityNotFoundException("Viaje no encontrado con ID: " + viajeId);
+        }
+
+        SseEmitter emisor = new SseEmitter(TIMEOUT_CONEXION_MS);
+        Suscriptor suscriptor = new Suscriptor(viajeId, emisor);
+        emisor.onCompletion(() -> quitar(suscriptor));
+        emisor.onTimeout(() -> quitar(suscriptor));
+        emisor.onError(e -> quitar(suscriptor));
+
+        // Se registra antes de leer la foto inicial para no perder cambios que ocurran mientras tanto;
+        // esos cambios quedan en el buffer y se envían después de la foto.
+        suscriptoresPorViaje.compute(viajeId, (id, suscriptores) -> {
+            Set<Suscriptor> conjunto = suscriptores != null ? suscriptores : ConcurrentHashMap.newKeySet();
+            if (conjunto.size() >= MAX_SUSCRIPTORES_POR_VIAJE) {
+                throw new IllegalStateException("Se alcanzó el máximo de conexiones en vivo para el viaje ID " + viajeId + ".");
+            }
+            conjunto.add(suscriptor);
+            return conjunto;
+        });
+
+        long version = inventarioAsientosService.versionAsientos(viajeId);
+        List<Integer> ocupados = pasajeRepository.findNumerosAsientoByViajeIdAndEstadoIn(viajeId, ESTADOS_OCUPADOS);
+        if (!suscriptor.buffer.offerFirst(new CambioAsientosDTO(viajeId, CambioAsientosDTO.TIPO_SNAPSHOT, ocupados, version))) {
+            expulsar(suscriptor);
+            return emisor;
+        }
+        suscriptor.listo = true;
+        programarEnvio(suscriptor);
+        logger.info("SSE: nuevo suscriptor para el viaje ID {} (total: {}).", viajeId, cantidadSuscriptores(viajeId));
+        return emisor;
+    }
+
+    @EventListener
+    public void alCambiarAsientos(CambioAsientosDTO cambio) {
+        Set<Suscriptor> suscriptores = suscriptoresPorViaje.get(cambio.getViajeId());
+        if (suscriptores == null) {
+            return;
+        }
+        for (Suscriptor suscriptor : suscriptores) {
+            encolar(suscriptor, cambio);
+        }
+    }
+
+    // Comentario periódico para mantener viva la conexión a través de proxies y detectar clientes caídos
+    @Scheduled(fixedRate = 25000)
+    public void enviarLatidos() {
+        suscriptoresPorViaje.values().forEach(suscriptores -> suscriptores.forEach(s -> encolar(s, LATIDO)));
+    }
+
+    @PreDestroy
+    public void cerrar() {
+        hilosEnvio.shutdownNow();
+        suscriptoresPorViaje.values().forEach(suscriptores -> suscriptores.forEach(s -> s.emisor.complete()));
+        suscriptoresPorViaje.clear();
+    }
+
+    private void encolar(Suscriptor suscriptor, Object evento) {
+        if (suscriptor.cerrado) {
+            return;
+        }
+        if (!suscriptor.buffer.offerLast(evento)) {
+            logger.warn("SSE: suscriptor lento del viaje ID {} desconectado (buffer lleno).", suscriptor.viajeId);
+            expulsar(suscriptor);
+            return;
+        }
+        programarEnvio(suscriptor);
+    }
+
+    private void programarEnvio(Suscriptor suscriptor) {
+        if (!suscriptor.listo || suscriptor.cerrado || !suscriptor.enviando.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            hilosEnvio.execute(() -> enviarPendientes(suscriptor));
+        } catch (RejectedExecutionException e) {
+            suscriptor.enviando.set(false);
+            expulsar(suscriptor);
+        }
+    }
+
+    private void enviarPendientes(Suscriptor suscriptor) {
+        try {
+            Object evento;
+            while (!suscriptor.cerrado && (evento = suscriptor.buffer.pollFirst()) != null) {
+                if (evento == LATIDO) {
+                    suscriptor.emisor.send(SseEmitter.event().comment("latido"));
+                } else {
+                    CambioAsientosDTO cambio = (CambioAsientosDTO) evento;
+                    suscriptor.emisor.send(SseEmitter.event()
+                            .id(String.valueOf(cambio.getVersion()))
+                            .name(cambio.getTipo())
+                            .data(cambio));
+                }
+            }
+        } catch (Exception e) {
+            // El cliente cerró la conexión: se lo quita sin más
+            logger.debug("SSE: error enviando al suscriptor del viaje ID {}: {}", suscriptor.viajeId, e.getMessage());
+            quitar(suscriptor);
+        } finally {
+            suscriptor.enviando.set(false);
+        }
+        // Pudo llegar un evento justo después de vaciar el buffer
+        if (!suscriptor.buffer.isEmpty()) {
+            programarEnvio(suscriptor);
+        }
+    }
+
+    private void expulsar(Suscriptor suscriptor) {
+        quitar(suscriptor);
+        suscriptor.emisor.complete();
+    }
+
+    private void quitar(Suscriptor suscriptor) {
+        suscriptor.cerrado = true;
+        suscriptor.buffer.clear();
+        suscriptoresPorViaje.computeIfPresent(suscriptor.viajeId, (id, suscriptores) -> {
+            suscriptores.remove(suscriptor);
+            return suscriptores.isEmpty() ? null : suscriptores;
+        });
+    }
+
+    private int cantidadSuscriptores(Integer viajeId) {
+        Set<Suscriptor> suscriptores = suscriptoresPorViaje.get(viajeId);
+        return suscriptores != null ? suscriptores.size() : 0;
+    }
+
+    private static final class Suscriptor {
+        private final Integer viajeId;
+        private final SseEmitter emisor;
+        private final LinkedBlockingDeque<Object> buffer = new LinkedBlockingDeque<>(CAPACIDAD_BUFFER_SUSCRIPTOR);
+        private final AtomicBoolean enviando = new AtomicBoolean(false);
+        private volatile boolean listo = false;   // true cuando la foto inicial ya está en el buffer
+        private volatile boolean cerrado = false;
+
+        private Suscriptor(Integer viajeId, SseEmitter emisor) {
+            this.viajeId = viajeId;
+            this.emisor = emisor;
+        }
+    }
+}
@@ -4,22 +4,33 @@ import com.omnibus.backend.dto.*;
 import com.omnibus.backend.model.*;
 import com.omnibus.backend.repository.LocalidadRepository;
 import com.omnibus.backend.repository.OmnibusRepository;
+import com.omnibus.backend.repository.OrdenBusquedaViajes;
 import com.omnibus.backend.repository.PasajeRepository;
 import com.omnibus.backend.repository.ViajeRepository;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityNotFoundException;
-import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.PersistenceContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
-import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.time.Duration;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneId;
 import java.util.*;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 public class ViajeService {
@@ -30,20 +41,49 @@ public class ViajeService {
     private static final Duration MIN_BUFFER_MISMA_LOCALIDAD_ENTRE_VIAJES = Duration.ofHours(2);
     private static final Duration MIN_BUFFER_OPERATIVO_POST_LLEGADA = Duration.ofMinutes(30);
 
+    private static final ZoneId ZONA_HORARIA_URUGUAY = ZoneId.of("America/Montevideo");
+    private static final int FILAS_POR_ENVIO_LISTADO = 200;
+    static final int MAX_VIAJES_POR_LOTE = 5000;
+    private static final List<EstadoBus> ESTADOS_BUS_PLANIFICABLES = List.of(EstadoBus.OPERATIVO, EstadoBus.ASIGNADO_A_VIAJE);
+    private static final int TAMANO_PAGINA_POR_DEFECTO = 20;
+    private static final int TAMANO_PAGINA_MAXIMO = 100;
+    private static final String ORDEN_LISTADO_PRECIOS = "SALIDA";
+
     private final ViajeRepository viajeRepository;
     private final LocalidadRepository localidadRepository;
     private final OmnibusRepository omnibusRepository;
     private final PasajeRepository pasajeRepository;
+    private final InventarioAsientosService inventarioAsientosService;
+    private final IndiceRutasService indiceRutasService;
+    private final CacheBusquedaViajesService cacheBusquedaViajesService;
+    private final PrecioService precioService;
+    private final ObjectMapper objectMapper;
+    private final ViajeStatusScheduler viajeStatusScheduler;
+
+    @PersistenceContext
+    private EntityManager entityManager;
 
     @Autowired
     public ViajeService(ViajeRepository viajeRepository,
                         LocalidadRepository localidadRepository,
                         OmnibusRepository omnibusRepository,
-                        PasajeRepository pasajeRepository) {
+                        PasajeRepository pasajeRepository,
+                        InventarioAsientosService inventarioAsientosService,
+                        IndiceRutasService indiceRutasService,
+                        CacheBusquedaViajesService cacheBusquedaViajesService,
+                        PrecioService precioService,
+                        ObjectMapper objectMapper,
+                        ViajeStatusScheduler viajeStatusScheduler) {
         this.viajeRepository = viajeRepository;
         this.localidadRepository = localidadRepository;
         this.omnibusRepository = omnibusRepository;
         this.pasajeRepository = pasajeRepository;
+        this.inventarioAsientosService = inventarioAsientosService;
+        this.indiceRutasService = indiceRutasService;
+        this.cacheBusquedaViajesService = cacheBusquedaViajesService;
+        this.precioService = precioService;
+        this.objectMapper = objectMapper;
+        this.viajeStatusScheduler = viajeStatusScheduler;
     }
 
     @Transactional
@@ -57,93 +97,45 @@ public class ViajeService {
         LocalDateTime salidaNuevoViajeDT = LocalDateTime.of(requestDTO.getFecha(), requestDTO.getHoraSalida());
         LocalDateTime llegadaNuevoViajeDT = LocalDateTime.of(requestDTO.getFecha(), requestDTO.getHoraLlegada());
 
-        if (salidaNuevoViajeDT.isAfter(llegadaNuevoViajeDT) || salidaNuevoViajeDT.isEqual(llegadaNuevoViajeDT)) {
-            throw new IllegalArgumentException("La fecha/hora de salida debe ser anterior a la de llegada.");
-        }
-        if (requestDTO.getOrigenId().equals(requestDTO.getDestinoId())) {
-            throw new IllegalArgumentException("La localidad de origen y destino no pueden ser la misma.");
-        }
-        if (requestDTO.getPrecio() == null || requestDTO.getPrecio() <= 0) {
-            throw new IllegalArgumentException("El precio del viaje debe ser un valor positivo.");
-        }
+        validarSolicitudViaje(requestDTO, salidaNuevoViajeDT, llegadaNuevoViajeDT);
 
         Localidad origenNuevoViaje = localidadRepository.findById(requestDTO.getOrigenId())
                 .orElseThrow(() -> new EntityNotFoundException("Localidad de origen no encontrada con ID: " + requestDTO.getOrigenId()));
         Localidad destinoNuevoViaje = localidadRepository.findById(requestDTO.getDestinoId())
                 .orElseThrow(() -> new EntityNotFoundException("Localidad de destino no encontrada con ID: " + requestDTO.getDestinoId()));
 
-        List<Omnibus> busesPotenciales = omnibusRepository.findByEstado(EstadoBus.OPERATIVO);
+        List<Omnibus> busesPotenciales = omnibusRepository.findByEstadoConLocalidad(EstadoBus.OPERATIVO);
         if (busesPotenciales.isEmpty()){
             throw new NoBusDisponibleException("No hay ómnibus en estado OPERATIVO en el sistema.");
         }
 
+        // Con el índice cargado, los viajes de cada bus se leen de memoria; si no, una sola consulta trae la agenda de todos
+        boolean desdeIndice = indiceRutasService.estaListo();
+        Map<Long, AgendaBus> agendasBD = desdeIndice ? Map.of() : agendasDesdeBD(salidaNuevoViajeDT, llegadaNuevoViajeDT);
         Omnibus busSeleccionado = null;
         for (Omnibus busCandidato : busesPotenciales) {
             logger.debug("Evaluando bus candidato para NUEVO VIAJE: {} (ID: {})", busCandidato.getMatricula(), busCandidato.getId());
 
-            List<Viaje> viajesConflictivosDirectos = viajeRepository.findOverlappingTrips(
-                    busCandidato,
-                    salidaNuevoViajeDT,
-                    llegadaNuevoViajeDT,
-                    Arrays.asList(EstadoViaje.PROGRAMADO, EstadoViaje.EN_CURSO)
-            );
-            if (!viajesConflictivosDirectos.isEmpty()) {
-                logger.debug("Bus {} tiene conflicto horario directo con viaje ID {}.", busCandidato.getMatricula(), viajesConflictivosDirectos.get(0).getId());
+            AgendaBus agenda = desdeIndice
+                    ? agendaDesdeIndice(busCandidato, salidaNuevoViajeDT, llegadaNuevoViajeDT)
+                    : agendasBD.get(busCandidato.getId());
+            if (agenda == null) {
+                // Dejó de estar OPERATIVO entre las dos consultas
                 continue;
             }
-
-            Localidad ubicacionPrevistaDelBusParaNuevoViaje = busCandidato.getLocalidadActual();
-            LocalDateTime horaLlegadaUltimoViajeDT = null;
-
-            List<Viaje> ultimosViajesActivosList = viajeRepository.findUltimoViajeActivoConcluidoAntesDe(
-                    busCandidato,
-                    salidaNuevoViajeDT,
-                    Arrays.asList(EstadoViaje.PROGRAMADO, EstadoViaje.EN_CURSO)
-            );
-
-            if (!ultimosViajesActivosList.isEmpty()) {
-                Viaje ultimoViajeActivoBus = ultimosViajesActivosList.get(0);
-                ubicacionPrevistaDelBusParaNuevoViaje = ultimoViajeActivoBus.getDestino();
-                horaLlegadaUltimoViajeDT = ultimoViajeActivoBus.getFechaHoraLlegada();
-                logger.debug("Último viaje del bus {}: ID {}, llega a {} a las {}", busCandidato.getMatricula(), ultimoViajeActivoBus.getId(), ubicacionPrevistaDelBusParaNuevoViaje.getNombre(), horaLlegadaUltimoViajeDT);
-            } else {
-                logger.debug("Bus {} no tiene viajes previos activos. Ubicación actual: {}", busCandidato.getMatricula(), ubicacionPrevistaDelBusParaNuevoViaje.getNombre());
+            if (agenda.conflicto()) {
+                logger.debug("Bus {} tiene conflicto horario directo con viaje ID {}.", busCandidato.getMatricula(), agenda.viajeConflictivoId());
+                continue;
             }
-
-            if (!ubicacionPrevistaDelBusParaNuevoViaje.getId().equals(origenNuevoViaje.getId())) {
-                logger.debug("Bus {} no estará en la localidad de origen {} para el nuevo viaje. Estará en {}", busCandidato.getMatricula(), origenNuevoViaje.getNombre(), ubicacionPrevistaDelBusParaNuevoViaje.getNombre());
+            if (!cumpleUbicacionYBuffers(busCandidato, agenda, origenNuevoViaje, destinoNuevoViaje, salidaNuevoViajeDT, llegadaNuevoViajeDT)) {
                 continue;
             }
-
-            if (horaLlegadaUltimoViajeDT != null) {
-                if (horaLlegadaUltimoViajeDT.plus(MIN_BUFFER_OPERATIVO_POST_LLEGADA).isAfter(salidaNuevoViajeDT)) {
-                    logger.debug("Bus {} no tiene suficiente tiempo de preparación. Llega a las {} (+{} min) vs salida nuevo viaje {}",
-                            busCandidato.getMatricula(), horaLlegadaUltimoViajeDT, MIN_BUFFER_OPERATIVO_POST_LLEGADA.toMinutes(), salidaNuevoViajeDT);
-                    continue;
-                }
-            }
-
-            List<Viaje> proximosViajesProgramadosList = viajeRepository.findProximoViajeProgramadoComenzandoDespuesDe(
-                    busCandidato,
-                    llegadaNuevoViajeDT,
-                    Arrays.asList(EstadoViaje.PROGRAMADO)
-            );
-
-            if (!proximosViajesProgramadosList.isEmpty()) {
-                Viaje proximoViajeAsignado = proximosViajesProgramadosList.get(0);
-                LocalDateTime salidaProximoViajeAsignadoDT = proximoViajeAsignado.getFechaHoraSalida();
-                logger.debug("Próximo viaje del bus {}: ID {}, sale de {} a las {}", busCandidato.getMatricula(), proximoViajeAsignado.getId(), proximoViajeAsignado.getOrigen().getNombre(), salidaProximoViajeAsignadoDT);
-
-                Duration bufferNecesario;
-                if (destinoNuevoViaje.getId().equals(proximoViajeAsignado.getOrigen().getId())) {
-                    bufferNecesario = MIN_BUFFER_MISMA_LOCALIDAD_ENTRE_VIAJES;
-                } else {
-                    bufferNecesario = MIN_BUFFER_GENERAL_ENTRE_VIAJES_DIF_LOC;
-                }
-
-                if (llegadaNuevoViajeDT.plus(bufferNecesario).isAfter(salidaProximoViajeAsignadoDT)) {
-                    logger.debug("Bus {} no tiene suficiente buffer ({} min) antes del próximo viaje. Llegada nuevo: {}, Salida próximo: {}",
-                            busCandidato.getMatricula(), bufferNecesario.toMinutes(), llegadaNuevoViajeDT, salidaProximoViajeAsignadoDT);
+            // El índice se actualiza tras cada commit: antes de escribir se confirma el conflicto directo contra la BD
+            if (desdeIndice) {
+                List<Viaje> conflictosEnBD = viajeRepository.findOverlappingTrips(busCandidato, salidaNuevoViajeDT, llegadaNuevoViajeDT,
+                        Arrays.asList(EstadoViaje.PROGRAMADO, EstadoViaje.EN_CURSO));
+                if (!conflictosEnBD.isEmpty()) {
+                    logger.warn("Bus {} descartado: el índice no reflejaba su viaje ID {}.", busCandidato.getMatricula(), conflictosEnBD.get(0).getId());
                     continue;
                 }
             }
@@ -172,11 +164,370 @@ public class ViajeService {
         omnibusRepository.save(busSeleccionado);
 
         Viaje viajeGuardado = viajeRepository.save(nuevoViaje);
+        indiceRutasService.actualizarTrasCommit(viajeGuardado);
+        viajeStatusScheduler.programarTrasCommit(viajeGuardado);
         logger.info("Viaje creado ID: {}. Precio: {}. Bus asignado: {} (ID: {})",
                 viajeGuardado.getId(), viajeGuardado.getPrecio(), busSeleccionado.getMatricula(), busSeleccionado.getId());
         return mapToViajeResponseDTO(viajeGuardado);
     }
 
+    private static void validarSolicitudViaje(ViajeRequestDTO requestDTO, LocalDateTime salida, LocalDateTime llegada) {
+        if (salida.isAfter(llegada) || salida.isEqual(llegada)) {
+            throw new IllegalArgumentException("La fecha/hora de salida debe ser anterior a la de llegada.");
+        }
+        if (requestDTO.getOrigenId().equals(requestDTO.getDestinoId())) {
+            throw new IllegalArgumentException("La localidad de origen y destino no pueden ser la misma.");
+        }
+        if (requestDTO.getPrecio() == null || requestDTO.getPrecio() <= 0) {
+            throw new IllegalArgumentException("El precio del viaje debe ser un valor positivo.");
+        }
+    }
+
+    /**
+     * Crea un lote de viajes (por ejemplo, el horario de una semana) asignando los buses al conjunto
+     * completo en lugar de viaje por viaje:
+     * <ol>
+     *     <li>Los viajes se encadenan en la menor cantidad de cadenas que un mismo bus puede recorrer
+     *     (cada viaje sale desde donde llega el anterior, con el buffer de misma localidad).</li>
+     *     <li>Las cadenas se reparten con un emparejamiento máximo entre los buses OPERATIVOS y los que ya
+     *     tienen viajes asignados; cada cadena se evalúa como un bloque contra la línea de tiempo del bus,
+     *     con las mismas reglas de superposición, ubicación y buffers que {@link #crearViaje}.</li>
+     *     <li>Las cadenas que no entran en ningún bus se vuelven a intentar viaje por viaje.</li>
+     * </ol>
+     * Todo se escribe en una sola transacción, con un insert en batch. Las solicitudes inválidas o sin
+     * bus se informan como rechazadas y no impiden crear el resto. Cada bus recibe como mucho una cadena por lote.
+     *
+     * @throws IllegalArgumentException si el lote está vacío o supera el máximo permitido.
+     */
+    @Transactional
+    public ResultadoLoteViajesDTO crearViajesEnLote(List<ViajeRequestDTO> solicitudes) {
+        return crearViajesEnLote(solicitudes, null);
+    }
+
+    /**
+     * Igual que {@link #crearViajesEnLote(List)}, registrando en cada viaje el horario recurrente que lo originó.
+     *
+     * @param horarios horario de cada solicitud (misma posición), o null si ninguna viene de un horario.
+     */
+    @Transactional
+    public ResultadoLoteViajesDTO crearViajesEnLote(List<ViajeRequestDTO> solicitudes, List<Horario> horarios) {
+        if (solicitudes.isEmpty() || solicitudes.size() > MAX_VIAJES_POR_LOTE) {
+            throw new IllegalArgumentException("El lote debe tener entre 1 y " + MAX_VIAJES_POR_LOTE + " viajes.");
+        }
+        ResultadoLoteViajesDTO resultado = new ResultadoLoteViajesDTO();
+
+        Set<Long> idsLocalidades = new HashSet<>();
+        solicitudes.forEach(s -> {
+            idsLocalidades.add(s.getOrigenId());
+            idsLocalidades.add(s.getDestinoId());
+        });
+        Map<Long, Localidad> localidades = localidadRepository.findAllById(idsLocalidades).stream()
+                .collect(Collectors.toMap(Localidad::getId, Function.identity()));
+
+        // Solicitudes válidas, como tramos; posiciones.get(t) es la posición en el lote del tramo t
+        List<PlanificadorLoteViajes.Tramo> tramos = new ArrayList<>();
+        List<Integer> posiciones = new ArrayList<>();
+        for (int i = 0; i < solicitudes.size(); i++) {
+            ViajeRequestDTO solicitud = solicitudes.get(i);
+            LocalDateTime salida = LocalDateTime.of(solicitud.getFecha(), solicitud.getHoraSalida());
+            LocalDateTime llegada = LocalDateTime.of(solicitud.getFecha(), solicitud.getHoraLlegada());
+            try {
+                validarSolicitudViaje(solicitud, salida, llegada);
+                if (!localidades.containsKey(solicitud.getOrigenId())) {
+                    throw new EntityNotFoundException("Localidad de origen no encontrada con ID: " + solicitud.getOrigenId());
+                }
+                if (!localidades.containsKey(solicitud.getDestinoId())) {
+                    throw new EntityNotFoundException("Localidad de destino no encontrada con ID: " + solicitud.getDestinoId());
+                }
+            } catch (IllegalArgumentException | EntityNotFoundException e) {
+                resultado.getRechazados().put(i, e.getMessage());
+                continue;
+            }
+            tramos.add(new PlanificadorLoteViajes.Tramo(salida, llegada, solicitud.getOrigenId(), solicitud.getDestinoId()));
+            posiciones.add(i);
+        }
+
+        // Entre dos viajes encadenados el bus ya está en la localidad: rige el mayor de los dos buffers aplicables
+        Duration bufferEncadenado = MIN_BUFFER_MISMA_LOCALIDAD_ENTRE_VIAJES.compareTo(MIN_BUFFER_OPERATIVO_POST_LLEGADA) >= 0
+                ? MIN_BUFFER_MISMA_LOCALIDAD_ENTRE_VIAJES : MIN_BUFFER_OPERATIVO_POST_LLEGADA;
+        List<List<Integer>> pendientes = PlanificadorLoteViajes.cadenasMinimas(tramos, bufferEncadenado);
+        logger.info("Lote de viajes: {} válidos de {}, agrupados en {} cadenas.", tramos.size(), solicitudes.size(), pendientes.size());
+
+        // Un bus que ya tiene viajes sigue disponible para otros: lo que decide es su línea de tiempo
+        // (superposiciones, ubicación y buffers), no su estado. Si no, cada tanda de horarios agotaría la flota.
+        List<Omnibus> buses = omnibusRepository.findByEstadoInConLocalidad(ESTADOS_BUS_PLANIFICABLES);
+        boolean[] busUsado = new boolean[buses.size()];
+        List<Viaje> nuevosViajes = new ArrayList<>();
+        List<Integer> posicionesNuevos = new ArrayList<>();
+        List<Omnibus> busesAsignados = new ArrayList<>();
+        for (int ronda = 0; ronda < 2 && !pendientes.isEmpty(); ronda++) {
+            int[] busPorCadena = asignarBusesACadenas(pendientes, tramos, buses, busUsado, localidades);
+            List<List<Integer>> sinBus = new ArrayList<>();
+            for (int c = 0; c < pendientes.size(); c++) {
+                List<Integer> cadena = pendientes.get(c);
+                if (busPorCadena[c] < 0) {
+                    sinBus.add(cadena);
+                    continue;
+                }
+                Omnibus bus = buses.get(busPorCadena[c]);
+                busUsado[busPorCadena[c]] = true;
+                busesAsignados.add(bus);
+                for (int t : cadena) {
+                    ViajeRequestDTO solicitud = solicitudes.get(posiciones.get(t));
+                    PlanificadorLoteViajes.Tramo tramo = tramos.get(t);
+                    nuevosViajes.add(Viaje.builder()
+                            .fechaHoraSalida(tramo.salida())
+                            .fechaHoraLlegada(tramo.llegada())
+                            .origen(localidades.get(tramo.origenId()))
+                            .destino(localidades.get(tramo.destinoId()))
+                            .busAsignado(bus)
+                            .asientosDisponibles(bus.getCapacidadAsientos())
+                            .pasajesVendidos(0)
+                            .estado(EstadoViaje.PROGRAMADO)
+                            .precio(solicitud.getPrecio())
+                            .horario(horarios != null ? horarios.get(posiciones.get(t)) : null)
+                            .build());
+                    posicionesNuevos.add(posiciones.get(t));
+                }
+            }
+            // Las cadenas que no entraron en ningún bus se reintentan separadas, viaje por viaje
+            List<List<Integer>> reintentos = new ArrayList<>();
+            for (List<Integer> cadena : sinBus) {
+                if (ronda == 0 && cadena.size() > 1) {
+                    cadena.forEach(t -> reintentos.add(List.of(t)));
+                } else {
+                    cadena.forEach(t -> resultado.getRechazados().put(posiciones.get(t),
+                            "No hay ómnibus disponibles que cumplan todos los criterios de horario, ubicación y buffers de tiempo."));
+                }
+            }
+            pendientes = reintentos;
+        }
+
+        // El índice puede estar desactualizado (por ejemplo, durante una recarga): antes de escribir se confirma
+        // contra la BD que cada bus elegido siga cumpliendo superposición, ubicación y buffers. Cada bus lleva
+        // una sola cadena, así que un conflicto descarta la cadena completa de ese bus.
+        Set<Long> busesEnConflicto = busesConConflictoEnBD(nuevosViajes);
+        if (!busesEnConflicto.isEmpty()) {
+            for (int i = nuevosViajes.size() - 1; i >= 0; i--) {
+                if (busesEnConflicto.contains(nuevosViajes.get(i).getBusAsignado().getId())) {
+                    resultado.getRechazados().put(posicionesNuevos.get(i),
+                            "El ómnibus elegido tiene viajes que no estaban reflejados en el índice y ya no cumple los criterios de horario, ubicación y buffers. Intente nuevamente.");
+                    nuevosViajes.remove(i);
+                    posicionesNuevos.remove(i);
+                }
+            }
+            busesAsignados.removeIf(bus -> busesEnConflicto.contains(bus.getId()));
+        }
+
+        viajeRepository.insertarEnLote(nuevosViajes);
+        busesAsignados.forEach(bus -> bus.setEstado(EstadoBus.ASIGNADO_A_VIAJE));
+        omnibusRepository.saveAll(busesAsignados);
+        for (int i = 0; i < nuevosViajes.size(); i++) {
+            Viaje viaje = nuevosViajes.get(i);
+            indiceRutasService.actualizarTrasCommit(viaje);
+            viajeStatusScheduler.programarTrasCommit(viaje);
+            resultado.getCreados().put(posicionesNuevos.get(i), mapToViajeResponseDTO(viaje));
+        }
+        resultado.setBusesUtilizados(busesAsignados.size());
+        logger.info("Lote de viajes: {} creados con {} buses, {} rechazados.",
+                nuevosViajes.size(), busesAsignados.size(), resultado.getRechazados().size());
+        return resultado;
+    }
+
+    /**
+     * Buses de los viajes nuevos cuya cadena no pasa las reglas de {@link #crearViaje} contra los viajes que
+     * ya tienen en la BD (una sola consulta): superposición, ubicación al salir y buffers con el viaje anterior
+     * y el siguiente. Cada bus lleva una sola cadena, que se evalúa como un bloque.
+     */
+    private Set<Long> busesConConflictoEnBD(List<Viaje> nuevosViajes) {
+        if (nuevosViajes.isEmpty()) {
+            return Set.of();
+        }
+        Map<Long, List<Viaje>> nuevosPorBus = nuevosViajes.stream()
+                .collect(Collectors.groupingBy(v -> v.getBusAsignado().getId()));
+        // Un viaje que sale después de la última llegada más el mayor buffer no puede afectar a ninguna cadena
+        LocalDateTime hasta = nuevosViajes.stream().map(Viaje::getFechaHoraLlegada).max(Comparator.naturalOrder()).get()
+                .plus(MIN_BUFFER_GENERAL_ENTRE_VIAJES_DIF_LOC);
+        Map<Long, List<Object[]>> existentesPorBus = viajeRepository.findAgendaPorBusesHasta(nuevosPorBus.keySet(), hasta,
+                        Arrays.asList(EstadoViaje.PROGRAMADO, EstadoViaje.EN_CURSO)).stream()
+                .collect(Collectors.groupingBy(fila -> (Long) fila[0]));
+
+        Set<Long> enConflicto = new HashSet<>();
+        nuevosPorBus.forEach((busId, cadena) -> {
+            List<Object[]> existentes = existentesPorBus.getOrDefault(busId, List.of());
+            cadena.sort(Comparator.comparing(Viaje::getFechaHoraSalida));
+            Viaje primero = cadena.get(0);
+            Viaje ultimo = cadena.get(cadena.size() - 1);
+            Omnibus bus = primero.getBusAsignado();
+            AgendaBus agenda = agendaDesdeFilas(bus, existentes, cadena, primero.getFechaHoraSalida(), ultimo.getFechaHoraLlegada());
+            if (agenda.conflicto()
+                    || !cumpleUbicacionYBuffers(bus, agenda, primero.getOrigen(), ultimo.getDestino(),
+                    primero.getFechaHoraSalida(), ultimo.getFechaHoraLlegada())) {
+                logger.warn("Lote de viajes: bus ID {} descartado, el índice no reflejaba su agenda en la BD para la cadena {} - {}.",
+                        busId, primero.getFechaHoraSalida(), ultimo.getFechaHoraLlegada());
+                enConflicto.add(busId);
+            }
+        });
+        return enConflicto;
+    }
+
+    // Agenda de un bus respecto de una cadena, a partir de sus viajes en la BD ordenados por salida
+    private static AgendaBus agendaDesdeFilas(Omnibus bus, List<Object[]> filas, List<Viaje> cadena,
+                                              LocalDateTime salida, LocalDateTime llegada) {
+        Object[] anterior = null;
+        Object[] proximo = null;
+        for (Object[] fila : filas) {
+            LocalDateTime salidaExistente = (LocalDateTime) fila[1];
+            LocalDateTime llegadaExistente = (LocalDateTime) fila[2];
+            for (Viaje nuevo : cadena) {
+                if (salidaExistente.isBefore(nuevo.getFechaHoraLlegada()) && llegadaExistente.isAfter(nuevo.getFechaHoraSalida())) {
+                    return AgendaBus.conConflicto(null);
+                }
+            }
+            if (!llegadaExistente.isAfter(salida)) {
+                if (anterior == null || llegadaExistente.isAfter((LocalDateTime) anterior[2])) {
+                    anterior = fila;
+                }
+            } else if (!salidaExistente.isBefore(llegada) && proximo == null) {
+                proximo = fila;
+            }
+        }
+        return new AgendaBus(false, null,
+                anterior != null ? (Long) anterior[4] : bus.getLocalidadActual().getId(),
+                anterior != null ? (String) anterior[5] : bus.getLocalidadActual().getNombre(),
+                anterior != null ? (LocalDateTime) anterior[2] : null,
+                proximo != null ? (Long) proximo[3] : null,
+                proximo != null ? (LocalDateTime) proximo[1] : null);
+    }
+
+    /**
+     * Para cada cadena, el bus (posición en {@code buses}) que la recorre, o -1. Un bus sirve para una
+     * cadena si cumple las reglas de {@link #crearViaje} tomando la cadena como un solo bloque, desde la
+     * salida del primer viaje hasta la llegada del último.
+     */
+    private int[] asignarBusesACadenas(List<List<Integer>> cadenas, List<PlanificadorLoteViajes.Tramo> tramos,
+                                       List<Omnibus> buses, boolean[] busUsado, Map<Long, Localidad> localidades) {
+        boolean desdeIndice = indiceRutasService.estaListo();
+        List<List<Integer>> busesPosibles = new ArrayList<>(cadenas.size());
+        for (List<Integer> cadena : cadenas) {
+            PlanificadorLoteViajes.Tramo primero = tramos.get(cadena.get(0));
+            PlanificadorLoteViajes.Tramo ultimo = tramos.get(cadena.get(cadena.size() - 1));
+            Map<Long, AgendaBus> agendasBD = desdeIndice ? Map.of()
+                    : agendasDesdeBD(primero.salida(), ultimo.llegada(), ESTADOS_BUS_PLANIFICABLES);
+            List<Integer> posibles = new ArrayList<>();
+            for (int b = 0; b < buses.size(); b++) {
+                if (busUsado[b]) {
+                    continue;
+                }
+                Omnibus bus = buses.get(b);
+                AgendaBus agenda = desdeIndice
+                        ? agendaDesdeIndice(bus, primero.salida(), ultimo.llegada())
+                        : agendasBD.get(bus.getId());
+                if (agenda != null && !agenda.conflicto()
+                        && cumpleUbicacionYBuffers(bus, agenda, localidades.get(primero.origenId()), localidades.get(ultimo.destinoId()),
+                        primero.salida(), ultimo.llegada())) {
+                    posibles.add(b);
+                }
+            }
+            busesPosibles.add(posibles);
+        }
+        return PlanificadorLoteViajes.emparejamientoMaximo(cadenas.size(), buses.size(), busesPosibles);
+    }
+
+    /**
+     * Lo que importa de la agenda de un bus para asignarle un viaje nuevo: si tiene un viaje que se
+     * superpone, dónde estará y a qué hora llega antes de la salida, y cuándo y desde dónde sale después.
+     */
+    private record AgendaBus(boolean conflicto, Integer viajeConflictivoId,
+                             Long ubicacionPrevistaId, String ubicacionPrevistaNombre, LocalDateTime llegadaAnterior,
+                             Long origenProximoId, LocalDateTime salidaProximo) {
+
+        // viajeId puede ser null si solo se sabe que hay conflicto
+        static AgendaBus conConflicto(Integer viajeId) {
+            return new AgendaBus(true, viajeId, null, null, null, null, null);
+        }
+    }
+
+    // Agenda leída de la línea de tiempo en memoria del bus (sin consultas)
+    private AgendaBus agendaDesdeIndice(Omnibus bus, LocalDateTime salida, LocalDateTime llegada) {
+        LineaTiempoBus linea = indiceRutasService.lineaTiempo(bus.getId());
+        IndiceRutasService.ViajeIndexado solapado = linea.solapadoCon(salida, llegada);
+        if (solapado != null) {
+            return AgendaBus.conConflicto(solapado.id);
+        }
+        IndiceRutasService.ViajeIndexado anterior = linea.ultimoEnLlegarAntesDe(llegada);
+        IndiceRutasService.ViajeIndexado proximo = linea.proximoProgramadoDesde(llegada);
+        return new AgendaBus(false, null,
+                anterior != null ? anterior.ruta.destinoId() : bus.getLocalidadActual().getId(),
+                anterior != null ? anterior.destinoNombre : bus.getLocalidadActual().getNombre(),
+                anterior != null ? anterior.llegada : null,
+                proximo != null ? proximo.ruta.origenId() : null,
+                proximo != null ? proximo.salida : null);
+    }
+
+    /**
+     * Agendas de todos los buses OPERATIVOS en una sola consulta (ventanas LAG/LEAD en la BD).
+     * Se usa mientras el índice de rutas no está cargado.
+     */
+    private Map<Long, AgendaBus> agendasDesdeBD(LocalDateTime salida, LocalDateTime llegada) {
+        return agendasDesdeBD(salida, llegada, List.of(EstadoBus.OPERATIVO));
+    }
+
+    private Map<Long, AgendaBus> agendasDesdeBD(LocalDateTime salida, LocalDateTime llegada, List<EstadoBus> estadosBus) {
+        Map<Long, AgendaBus> agendas = new HashMap<>();
+        List<String> estados = estadosBus.stream().map(EstadoBus::name).toList();
+        for (Object[] fila : viajeRepository.calcularAgendasBuses(salida, llegada, estados)) {
+            Long busId = ((Number) fila[0]).longValue();
+            if (Boolean.TRUE.equals(fila[1])) {
+                agendas.put(busId, AgendaBus.conConflicto(fila[2] != null ? ((Number) fila[2]).intValue() : null));
+                continue;
+            }
+            agendas.put(busId, new AgendaBus(false, null,
+                    ((Number) fila[3]).longValue(), (String) fila[4], aLocalDateTime(fila[5]),
+                    fila[6] != null ? ((Number) fila[6]).longValue() : null, aLocalDateTime(fila[7])));
+        }
+        return agendas;
+    }
+
+    // Según el driver, las columnas timestamp de una consulta nativa llegan como Timestamp o como LocalDateTime
+    private static LocalDateTime aLocalDateTime(Object valor) {
+        if (valor instanceof java.sql.Timestamp timestamp) {
+            return timestamp.toLocalDateTime();
+        }
+        return (LocalDateTime) valor;
+    }
+
+    // Reglas de ubicación y tiempos de preparación entre viajes del mismo bus
+    private boolean cumpleUbicacionYBuffers(Omnibus bus, AgendaBus agenda, Localidad origen, Localidad destino,
+                                            LocalDateTime salida, LocalDateTime llegada) {
+        if (!agenda.ubicacionPrevistaId().equals(origen.getId())) {
+            logger.debug("Bus {} no estará en la localidad de origen {} para el nuevo viaje. Estará en {}", bus.getMatricula(), origen.getNombre(), agenda.ubicacionPrevistaNombre());
+            return false;
+        }
+
+        if (agenda.llegadaAnterior() != null && agenda.llegadaAnterior().plus(MIN_BUFFER_OPERATIVO_POST_LLEGADA).isAfter(salida)) {
+            logger.debug("Bus {} no tiene suficiente tiempo de preparación. Llega a las {} (+{} min) vs salida nuevo viaje {}",
+                    bus.getMatricula(), agenda.llegadaAnterior(), MIN_BUFFER_OPERATIVO_POST_LLEGADA.toMinutes(), salida);
+            return false;
+        }
+
+        if (agenda.salidaProximo() != null) {
+            Duration bufferNecesario;
+            if (destino.getId().equals(agenda.origenProximoId())) {
+                bufferNecesario = MIN_BUFFER_MISMA_LOCALIDAD_ENTRE_VIAJES;
+            } else {
+                bufferNecesario = MIN_BUFFER_GENERAL_ENTRE_VIAJES_DIF_LOC;
+            }
+
+            if (llegada.plus(bufferNecesario).isAfter(agenda.salidaProximo())) {
+                logger.debug("Bus {} no tiene suficiente buffer ({} min) antes del próximo viaje. Llegada nuevo: {}, Salida próximo: {}",
+                        bus.getMatricula(), bufferNecesario.toMinutes(), llegada, agenda.salidaProximo());
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Transactional
     public void finalizarViaje(Integer viajeId) {
         logger.info("Intentando finalizar viaje con ID: {}", viajeId);
@@ -201,6 +552,8 @@ public class ViajeService {
 
         viaje.setEstado(EstadoViaje.FINALIZADO);
         viajeRepository.save(viaje);
+        inventarioAsientosService.invalidar(viajeId);
+        indiceRutasService.actualizarTrasCommit(viaje);
 
         Localidad destinoViaje = viaje.getDestino();
         bus.setLocalidadActual(destinoViaje);
@@ -262,26 +615,87 @@ public class ViajeService {
         }
 
         viaje.setBusAsignado(nuevoOmnibus);
-        viaje.setAsientosDisponibles(nuevoOmnibus.getCapacidadAsientos() - pasajesVendidos);
         nuevoOmnibus.setEstado(EstadoBus.ASIGNADO_A_VIAJE);
         omnibusRepository.save(nuevoOmnibus);
+        viajeRepository.save(viaje);
 
-        Viaje viajeActualizado = viajeRepository.save(viaje);
+        // El contador se recalcula en la BD con los pasajes ocupados en ese instante,
+        // así una venta concurrente no se pierde entre el conteo y la escritura.
+        viajeRepository.recalcularAsientosDisponibles(viajeId, nuevoOmnibus.getCapacidadAsientos(), estadosPasajeOcupado);
+        Viaje viajeActualizado = viajeRepository.findById(viajeId)
+                .orElseThrow(() -> new EntityNotFoundException("Viaje no encontrado con ID: " + viajeId));
+        // La capacidad del nuevo bus puede ser distinta: el mapa de asientos se recarga en el próximo uso.
+        inventarioAsientosService.invalidar(viajeId);
+        indiceRutasService.actualizarTrasCommit(viajeActualizado);
         logger.info("Viaje ID {} reasignado a ómnibus ID {}. Asientos disponibles ahora: {}", viajeId, nuevoOmnibusId, viajeActualizado.getAsientosDisponibles());
         return mapToViajeResponseDTO(viajeActualizado);
     }
 
+    /**
+     * Evalúa toda la flota para reasignar el viaje y devuelve los ómnibus que pueden tomarlo, mejores primero.
+     * Un candidato debe cumplir lo mismo que exige {@link #reasignarViaje} (OPERATIVO, en la localidad de
+     * origen, con capacidad para los pasajes ya vendidos y sin superposiciones) y además los buffers de
+     * {@link #crearViaje} con sus viajes anterior y siguiente. Las agendas salen de la línea de tiempo en
+     * memoria o, si el índice no está cargado, de una sola consulta para todos los buses.
+     * <p>
+     * Orden: primero los que no necesitan reposicionarse para su próximo viaje, luego los de menor tiempo
+     * ocioso antes de la salida (el que mejor encaja deja libres a los que tienen más margen), y por matrícula.
+     *
+     * @throws EntityNotFoundException si el viaje no existe.
+     * @throws IllegalStateException si el viaje no está PROGRAMADO.
+     */
+    @Transactional(readOnly = true)
+    public List<CandidatoReasignacionDTO> obtenerCandidatosReasignacion(Integer viajeId) {
+        Viaje viaje = viajeRepository.findById(viajeId)
+                .orElseThrow(() -> new EntityNotFoundException("Viaje no encontrado con ID: " + viajeId));
+        if (viaje.getEstado() != EstadoViaje.PROGRAMADO) {
+            throw new IllegalStateException("El viaje con ID " + viajeId + " no está PROGRAMADO. Estado: " + viaje.getEstado() + ". No se puede reasignar.");
+        }
+        Long busActualId = viaje.getBusAsignado() != null ? viaje.getBusAsignado().getId() : null;
+        LocalDateTime salida = viaje.getFechaHoraSalida();
+        LocalDateTime llegada = viaje.getFechaHoraLlegada();
+        long pasajesOcupados = pasajeRepository.countByDatosViajeAndEstadoIn(viaje, Arrays.asList(EstadoPasaje.VENDIDO, EstadoPasaje.RESERVADO));
+
+        boolean desdeIndice = indiceRutasService.estaListo();
+        Map<Long, AgendaBus> agendasBD = desdeIndice ? Map.of() : agendasDesdeBD(salida, llegada);
+        List<CandidatoReasignacionDTO> candidatos = new ArrayList<>();
+        for (Omnibus bus : omnibusRepository.findByEstadoConLocalidad(EstadoBus.OPERATIVO)) {
+            if (bus.getId().equals(busActualId)
+                    || !bus.getLocalidadActual().getId().equals(viaje.getOrigen().getId())
+                    || bus.getCapacidadAsientos() < pasajesOcupados) {
+                continue;
+            }
+            AgendaBus agenda = desdeIndice ? agendaDesdeIndice(bus, salida, llegada) : agendasBD.get(bus.getId());
+            if (agenda == null || agenda.conflicto()
+                    || !cumpleUbicacionYBuffers(bus, agenda, viaje.getOrigen(), viaje.getDestino(), salida, llegada)) {
+                continue;
+            }
+            candidatos.add(new CandidatoReasignacionDTO(
+                    bus.getId(),
+                    bus.getMatricula(),
+                    bus.getCapacidadAsientos(),
+                    agenda.llegadaAnterior(),
+                    agenda.llegadaAnterior() != null ? Duration.between(agenda.llegadaAnterior(), salida).toMinutes() : null,
+                    agenda.salidaProximo(),
+                    agenda.salidaProximo() != null && !viaje.getDestino().getId().equals(agenda.origenProximoId())));
+        }
+        candidatos.sort(Comparator.comparing(CandidatoReasignacionDTO::isRequiereReposicionamiento)
+                .thenComparing(CandidatoReasignacionDTO::getMinutosOciosoAntes, Comparator.nullsLast(Comparator.naturalOrder()))
+                .thenComparing(CandidatoReasignacionDTO::getMatricula));
+        logger.info("Reasignación del viaje ID {}: {} ómnibus candidatos.", viajeId, candidatos.size());
+        return candidatos;
+    }
+
     public List<ViajeResponseDTO> obtenerViajesPorEstado(EstadoViaje estado) {
         logger.info("Buscando viajes con estado: {}", estado);
-        List<Viaje> viajesEncontrados = viajeRepository.findByEstado(estado);
+        // Proyección directa al DTO: una sola consulta, sin cargar origen/destino/bus por cada viaje
+        List<ViajeResponseDTO> viajesEncontrados = viajeRepository.findResponseByEstado(estado);
         if (viajesEncontrados.isEmpty()) {
             logger.info("No se encontraron viajes para el estado: {}", estado);
             return new ArrayList<>();
         }
         logger.info("Se encontraron {} viajes para el estado: {}", viajesEncontrados.size(), estado);
-        return viajesEncontrados.stream()
-                .map(this::mapToViajeResponseDTO)
-                .collect(Collectors.toList());
+        return viajesEncontrados;
     }
 
     public List<ViajeResponseDTO> buscarViajesDeOmnibus(Long omnibusId, BusquedaViajesOmnibusDTO dto) {
@@ -289,28 +703,6 @@ public class ViajeService {
         omnibusRepository.findById(omnibusId)
                 .orElseThrow(() -> new EntityNotFoundException("Ómnibus no encontrado con ID: " + omnibusId));
 
-        Specification<Viaje> spec = (root, query, criteriaBuilder) -> {
-            List<Predicate> predicates = new ArrayList<>();
-            predicates.add(criteriaBuilder.equal(root.get("busAsignado").get("id"), omnibusId));
-
-            if (dto.getFechaDesde() != null) {
-                predicates.add(criteriaBuilder.greaterThanOrEqualTo(root.get("fechaHoraSalida"), dto.getFechaDesde().atStartOfDay()));
-            }
-            if (dto.getFechaHasta() != null) {
-                predicates.add(criteriaBuilder.lessThanOrEqualTo(root.get("fechaHoraSalida"), dto.getFechaHasta().plusDays(1).atStartOfDay()));
-            }
-            if (dto.getEstadoViaje() != null) {
-                predicates.add(criteriaBuilder.equal(root.get("estado"), dto.getEstadoViaje()));
-            }
-            if (dto.getEstadoViaje() == null) {
-                predicates.add(criteriaBuilder.or(
-                        criteriaBuilder.equal(root.get("estado"), EstadoViaje.PROGRAMADO),
-                        criteriaBuilder.equal(root.get("estado"), EstadoViaje.EN_CURSO)
-                ));
-            }
-            return criteriaBuilder.and(predicates.toArray(new Predicate[0]));
-        };
-
         String defaultSortField = "fechaHoraSalida";
         Sort sort = Sort.by(Sort.Direction.ASC, defaultSortField);
 
@@ -325,102 +717,105 @@ public class ViajeService {
             }
         }
 
-        List<Viaje> viajesEncontrados = viajeRepository.findAll(spec, sort);
-        return viajesEncontrados.stream()
-                .map(this::mapToViajeResponseDTO)
-                .collect(Collectors.toList());
+        // Filtros y orden en una consulta de proyección a ViajeResponseDTO
+        return viajeRepository.buscarResponsePorOmnibus(omnibusId, dto, sort);
     }
 
-    @Transactional(readOnly = true)
+    // Sin @Transactional a propósito: un acierto de caché no debe tomar una conexión del pool.
     public List<ViajeConDisponibilidadDTO> buscarViajesConDisponibilidad(BusquedaViajesGeneralDTO criterios) {
+        return cacheBusquedaViajesService.obtener(criterios, () -> buscarViajesConDisponibilidadSinCache(criterios));
+    }
+
+    private List<ViajeConDisponibilidadDTO> buscarViajesConDisponibilidadSinCache(BusquedaViajesGeneralDTO criterios) {
         logger.debug("Buscando viajes con disponibilidad. Criterios: {}", criterios);
+        // Con origen y destino definidos la búsqueda se resuelve desde el índice de rutas en memoria.
+        Optional<List<ViajeConDisponibilidadDTO>> desdeIndice = indiceRutasService.buscar(criterios);
+        if (desdeIndice.isPresent()) {
+            logger.debug("Viajes encontrados en el índice de rutas: {}", desdeIndice.get().size());
+            return desdeIndice.get();
+        }
+        // Una sola consulta: conteo agrupado de pasajes, filtro de asientos mínimos y orden en la BD.
+        List<ViajeConDisponibilidadDTO> dtos = viajeRepository.buscarConDisponibilidad(criterios);
+        logger.debug("Viajes encontrados por BD: {}", dtos.size());
+        return dtos;
+    }
 
-        Specification<Viaje> spec = (root, query, criteriaBuilder) -> {
-            List<Predicate> predicates = new ArrayList<>();
+    /**
+     * Búsqueda de viajes con disponibilidad paginada por cursor (keyset sobre el campo de orden y el ID).
+     * Cada página se obtiene con una consulta acotada (o desde el índice de rutas), sin OFFSET,
+     * así el costo por página no crece al avanzar en el listado.
+     *
+     * @throws IllegalArgumentException si el cursor es inválido o corresponde a otro orden.
+     */
+    @Transactional(readOnly = true)
+    public PaginaCursorDTO<ViajeConDisponibilidadDTO> buscarViajesConDisponibilidadPaginado(BusquedaViajesGeneralDTO criterios) {
+        int limite = normalizarLimite(criterios.getLimite());
+        OrdenBusquedaViajes orden = OrdenBusquedaViajes.desde(criterios.getSortBy());
+        boolean descendente = OrdenBusquedaViajes.esDescendente(criterios.getSortDir());
+        String claveOrden = orden.name() + (descendente ? "_DESC" : "_ASC");
+        CursorPaginacion cursor = criterios.getCursor() != null
+                ? CursorPaginacion.decodificar(criterios.getCursor(), claveOrden) : null;
+
+        // Se pide un elemento de más para saber si hay otra página
+        List<ViajeConDisponibilidadDTO> filas;
+        Optional<List<ViajeConDisponibilidadDTO>> desdeIndice = indiceRutasService.buscar(criterios);
+        if (desdeIndice.isPresent()) {
+            Comparable<?> valorCursor = cursor != null ? orden.leerValorCursor(cursor.valor()) : null;
+            filas = desdeIndice.get().stream()
+                    .filter(v -> cursor == null || orden.posteriorA(v, valorCursor, cursor.id(), descendente))
+                    .limit(limite + 1L)
+                    .collect(Collectors.toList());
+        } else {
+            filas = viajeRepository.buscarConDisponibilidad(criterios, cursor, limite + 1);
+        }
+        return armarPagina(filas, limite, v -> new CursorPaginacion(claveOrden, orden.valorCursor(v), v.getId()));
+    }
 
-            if (criterios.getOrigenId() != null) {
-                predicates.add(criteriaBuilder.equal(root.get("origen").get("id"), criterios.getOrigenId()));
-            }
-            if (criterios.getDestinoId() != null) {
-                predicates.add(criteriaBuilder.equal(root.get("destino").get("id"), criterios.getDestinoId()));
-            }
-            if (criterios.getFechaDesde() != null) {
-                predicates.add(criteriaBuilder.greaterThanOrEqualTo(root.get("fechaHoraSalida"), criterios.getFechaDesde().atStartOfDay()));
-            }
-            if (criterios.getFechaHasta() != null) {
-                predicates.add(criteriaBuilder.lessThanOrEqualTo(root.get("fechaHoraSalida"), criterios.getFechaHasta().plusDays(1).atStartOfDay()));
-            }
-            if (criterios.getEstado() != null) {
-                predicates.add(criteriaBuilder.equal(root.get("estado"), criterios.getEstado()));
-            } else {
-                predicates.add(criteriaBuilder.or(
-                        criteriaBuilder.equal(root.get("estado"), EstadoViaje.PROGRAMADO),
-                        criteriaBuilder.equal(root.get("estado"), EstadoViaje.EN_CURSO)
-                ));
+    /**
+     * Calendario mensual de una ruta: para cada día del mes, la cantidad de salidas PROGRAMADAS que
+     * quedan, los asientos libres y el precio mínimo para el tipo de cliente. Se resuelve con una sola
+     * consulta agrupada por día; los días sin salidas se completan con ceros.
+     *
+     * @throws IllegalArgumentException si falta algún parámetro o el origen coincide con el destino.
+     */
+    @Transactional(readOnly = true)
+    public List<DiaCalendarioDTO> obtenerCalendarioRuta(Long origenId, Long destinoId, YearMonth mes, TipoCliente tipoCliente) {
+        if (origenId == null || destinoId == null || mes == null) {
+            throw new IllegalArgumentException("El origen, el destino y el mes son obligatorios.");
+        }
+        if (origenId.equals(destinoId)) {
+            throw new IllegalArgumentException("El origen y el destino deben ser distintos.");
+        }
+        LocalDateTime inicioMes = mes.atDay(1).atStartOfDay();
+        LocalDateTime ahora = LocalDateTime.now(ZONA_HORARIA_URUGUAY);
+        LocalDateTime desde = inicioMes.isBefore(ahora) ? ahora : inicioMes;
+        LocalDateTime hasta = mes.plusMonths(1).atDay(1).atStartOfDay();
+
+        Map<LocalDate, DiaCalendarioDTO> porDia = new HashMap<>();
+        if (desde.isBefore(hasta)) {
+            for (DiaCalendarioDTO dia : viajeRepository.calcularCalendarioRuta(origenId, destinoId, EstadoViaje.PROGRAMADO, desde, hasta)) {
+                // El descuento es proporcional, así que aplicarlo al mínimo da el mínimo con descuento
+                if (dia.getPrecioMinimo() != null) {
+                    dia.setPrecioMinimo(precioService.calcularPrecioFinal(dia.getPrecioMinimo(), tipoCliente));
+                }
+                porDia.put(dia.getFecha(), dia);
             }
-            predicates.add(criteriaBuilder.isNotNull(root.get("busAsignado")));
-            return criteriaBuilder.and(predicates.toArray(new Predicate[0]));
-        };
-
-        List<Viaje> viajesFiltrados = viajeRepository.findAll(spec);
-        logger.debug("Viajes filtrados por BD: {}", viajesFiltrados.size());
+        }
 
-        List<ViajeConDisponibilidadDTO> dtos = viajesFiltrados.stream().map(viaje -> {
-            Omnibus omnibus = viaje.getBusAsignado();
-            if (omnibus == null) {
-                return null;
-            }
-            List<EstadoPasaje> estadosOcupados = Arrays.asList(EstadoPasaje.VENDIDO, EstadoPasaje.RESERVADO);
-            long asientosVendidosCount = pasajeRepository.countByDatosViajeAndEstadoIn(viaje, estadosOcupados);
-
-            return new ViajeConDisponibilidadDTO(
-                    viaje.getId(),
-                    viaje.getFechaHoraSalida(),
-                    viaje.getFechaHoraLlegada(),
-                    viaje.getOrigen().getNombre(),
-                    viaje.getDestino().getNombre(),
-                    omnibus.getMatricula(),
-                    omnibus.getCapacidadAsientos(),
-                    (int) asientosVendidosCount,
-                    viaje.getEstado(),
-                    viaje.getPrecio()
-            );
-        }).filter(Objects::nonNull).collect(Collectors.toList());
-
-        if (criterios.getMinAsientosDisponibles() != null) {
-            dtos = dtos.stream()
-                    .filter(dto -> dto.getAsientosDisponibles() >= criterios.getMinAsientosDisponibles())
-                    .collect(Collectors.toList());
+        List<DiaCalendarioDTO> calendario = new ArrayList<>(mes.lengthOfMonth());
+        for (int d = 1; d <= mes.lengthOfMonth(); d++) {
+            LocalDate fecha = mes.atDay(d);
+            calendario.add(porDia.getOrDefault(fecha, new DiaCalendarioDTO(fecha, 0, 0, null)));
         }
+        return calendario;
+    }
 
-        // Lógica de ordenamiento
-        Comparator<ViajeConDisponibilidadDTO> comparator;
-        boolean ascending = criterios.getSortDir() == null || "asc".equalsIgnoreCase(criterios.getSortDir());
-
-        switch (criterios.getSortBy() != null ? criterios.getSortBy().toLowerCase() : "fechasalida") {
-            case "origennombre":
-                comparator = Comparator.comparing(ViajeConDisponibilidadDTO::getOrigenNombre, String.CASE_INSENSITIVE_ORDER);
-                break;
-            case "destinonombre":
-                comparator = Comparator.comparing(ViajeConDisponibilidadDTO::getDestinoNombre, String.CASE_INSENSITIVE_ORDER);
-                break;
-            case "asientosdisponibles":
-                comparator = Comparator.comparingInt(ViajeConDisponibilidadDTO::getAsientosDisponibles);
-                break;
-            case "precio":
-                comparator = Comparator.comparing(ViajeConDisponibilidadDTO::getPrecio, Comparator.nullsLast(Double::compareTo));
-                break;
-            case "fechasalida":
-            default:
-                comparator = Comparator.comparing(ViajeConDisponibilidadDTO::getFechaSalida, Comparator.nullsLast(LocalDateTime::compareTo));
-                break;
-        }
-
-        if (!ascending) {
-            comparator = comparator.reversed();
-        }
-        dtos.sort(comparator);
-        return dtos;
+    /**
+     * ETag del mapa de asientos del viaje. Se obtiene de memoria, sin consultar la base de datos,
+     * para poder responder 304 a los clientes que ya tienen la versión actual.
+     */
+    public String obtenerEtagAsientos(Integer viajeId) {
+        return inventarioAsientosService.etagAsientos(viajeId);
     }
 
     @Transactional(readOnly = true)
@@ -484,9 +879,67 @@ public class ViajeService {
         }
     }
 
-    public List<ViajePrecioDTO> listarTodosLosViajesConPrecio() {
-        List<Viaje> viajes = viajeRepository.findAll();
-        return viajes.stream().map(viaje -> new ViajePrecioDTO(
+    /**
+     * Escribe el listado completo de precios como un arreglo JSON, fila por fila, a medida que llegan
+     * de la BD. Cada viaje se desvincula del contexto de persistencia apenas se escribe, así la memoria
+     * no crece con la cantidad de viajes. Se invoca desde el hilo de un StreamingResponseBody, por eso
+     * abre su propia transacción (necesaria para que PostgreSQL respete el fetch size).
+     */
+    @Transactional(readOnly = true)
+    public void escribirListadoPreciosJson(OutputStream salida) throws IOException {
+        try (Stream<Viaje> viajes = viajeRepository.streamListadoPrecios();
+             JsonGenerator generador = objectMapper.getFactory().createGenerator(salida)) {
+            generador.writeStartArray();
+            int escritos = 0;
+            Iterator<Viaje> iterador = viajes.iterator();
+            while (iterador.hasNext()) {
+                Viaje viaje = iterador.next();
+                generador.writeObject(convertirAViajePrecioDTO(viaje));
+                entityManager.detach(viaje);
+                // Se vacía el buffer cada tanto para que el cliente reciba datos desde el principio
+                if (++escritos % FILAS_POR_ENVIO_LISTADO == 0) {
+                    generador.flush();
+                }
+            }
+            generador.writeEndArray();
+            logger.info("Listado de precios enviado en streaming: {} viajes.", escritos);
+        }
+    }
+
+    /**
+     * Listado de precios paginado por cursor, ordenado por (fecha de salida, id).
+     *
+     * @throws IllegalArgumentException si el cursor o el tamaño de página son inválidos.
+     */
+    @Transactional(readOnly = true)
+    public PaginaCursorDTO<ViajePrecioDTO> listarViajesConPrecioPaginado(String cursorTexto, Integer limiteSolicitado) {
+        int limite = normalizarLimite(limiteSolicitado);
+        PageRequest pagina = PageRequest.of(0, limite + 1);
+        List<Viaje> viajes;
+        if (cursorTexto == null) {
+            viajes = viajeRepository.findPrimeraPaginaListadoPrecios(pagina);
+        } else {
+            CursorPaginacion cursor = CursorPaginacion.decodificar(cursorTexto, ORDEN_LISTADO_PRECIOS);
+            LocalDateTime salida;
+            try {
+                salida = LocalDateTime.parse(cursor.valor());
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Cursor de paginación inválido.");
+            }
+            viajes = viajeRepository.findPaginaListadoPreciosDespuesDe(salida, cursor.id(), pagina);
+        }
+        List<ViajePrecioDTO> filas = new ArrayList<>(viajes.size());
+        Map<Integer, LocalDateTime> salidas = new HashMap<>();
+        for (Viaje viaje : viajes) {
+            filas.add(convertirAViajePrecioDTO(viaje));
+            salidas.put(viaje.getId(), viaje.getFechaHoraSalida());
+        }
+        return armarPagina(filas, limite,
+                v -> new CursorPaginacion(ORDEN_LISTADO_PRECIOS, salidas.get(v.getId()).toString(), v.getId()));
+    }
+
+    private ViajePrecioDTO convertirAViajePrecioDTO(Viaje viaje) {
+        return new ViajePrecioDTO(
                 viaje.getId(),
                 viaje.getFecha(),
                 viaje.getHoraSalida(),
@@ -497,6 +950,24 @@ public class ViajeService {
                 viaje.getAsientosDisponibles(),
                 viaje.getEstado(),
                 viaje.getPrecio()
-        )).collect(Collectors.toList());
+        );
+    }
+
+    private static int normalizarLimite(Integer limite) {
+        if (limite == null) {
+            return TAMANO_PAGINA_POR_DEFECTO;
+        }
+        if (limite < 1) {
+            throw new IllegalArgumentException("El tamaño de página debe ser al menos 1.");
+        }
+        return Math.min(limite, TAMANO_PAGINA_MAXIMO);
+    }
+
+    // Recibe hasta limite + 1 filas: si sobra una, hay página siguiente y el cursor apunta al último elemento entregado.
+    private static <T> PaginaCursorDTO<T> armarPagina(List<T> filas, int limite, Function<T, CursorPaginacion> cursorDe) {
+        boolean hayMas = filas.size() > limite;
+        List<T> contenido = hayMas ? new ArrayList<>(filas.subList(0, limite)) : filas;
+        String siguienteCursor = hayMas ? cursorDe.apply(contenido.get(contenido.size() - 1)).codificar() : null;
+        return new PaginaCursorDTO<>(contenido, siguienteCursor, hayMas);
     }
 }
\ No newline at end of file
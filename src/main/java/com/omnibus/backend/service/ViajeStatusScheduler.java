@@ -2,96 +2,226 @@ package com.omnibus.backend.service;
 
 import com.omnibus.backend.model.*;
 import com.omnibus.backend.repository.OmnibusRepository;
-import com.omnibus.backend.repository.PasajeRepository;
 import com.omnibus.backend.repository.ViajeRepository;
+import jakarta.annotation.PreDestroy;
 import jakarta.persistence.EntityNotFoundException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Cambia el estado de los viajes en el momento exacto en que corresponde, sin recorrer la base de datos.
+ * <p>
+ * Para cada viaje activo se guarda en una DelayQueue el instante de su próxima transición:
+ * PROGRAMADO → VENTAS_CERRADAS una hora antes de la salida, VENTAS_CERRADAS → EN_CURSO a la salida y
+ * EN_CURSO → FINALIZADO a la llegada (un PROGRAMADO cuya llegada ya pasó se finaliza directamente).
+ * Un hilo propio toma cada transición apenas vence y la aplica en su propia transacción,
+ * volviendo a leer el viaje; después se programa la siguiente.
+ * <p>
+ * La cola se reconstruye al arrancar y se resincroniza cada {@value #MINUTOS_RESINCRONIZACION} minutos
+ * con una consulta liviana, para tomar los viajes creados o modificados por fuera de {@link ViajeService}.
+ */
 @Service
 public class ViajeStatusScheduler {
 
     private static final Logger logger = LoggerFactory.getLogger(ViajeStatusScheduler.class);
     private static final ZoneId ZONA_HORARIA_URUGUAY = ZoneId.of("America/Montevideo");
+    private static final Duration ANTICIPACION_CIERRE_VENTAS = Duration.ofHours(1);
+    private static final long MILLIS_REINTENTO = 60_000;
+    static final int MINUTOS_RESINCRONIZACION = 15;
+    private static final List<EstadoViaje> ESTADOS_ACTIVOS =
+            List.of(EstadoViaje.PROGRAMADO, EstadoViaje.VENTAS_CERRADAS, EstadoViaje.EN_CURSO);
 
     private final ViajeRepository viajeRepository;
     private final OmnibusRepository omnibusRepository;
-    private final PasajeRepository pasajeRepository;
-    private final EmailService emailService;
+    private final TransactionTemplate transactionTemplate;
+
+    private final DelayQueue<TransicionProgramada> cola = new DelayQueue<>();
+    // Instante vigente de cada viaje; las entradas de la cola que no coinciden quedaron obsoletas y se descartan
+    private final Map<Integer, Long> programadas = new ConcurrentHashMap<>();
+    private final Thread hiloTransiciones;
+
+    @Autowired
+    private AvisoCierreVentasService avisoCierreVentasService;
 
     @Autowired
-    private NotificacionService notificacionService;
+    private InventarioAsientosService inventarioAsientosService;
 
     @Autowired
-    private FirebaseNotificationService firebaseNotificationService;
+    private IndiceRutasService indiceRutasService;
 
     @Autowired
-    public ViajeStatusScheduler(ViajeRepository viajeRepository, OmnibusRepository omnibusRepository, PasajeRepository pasajeRepository, EmailService emailService) {
+    public ViajeStatusScheduler(ViajeRepository viajeRepository, OmnibusRepository omnibusRepository, TransactionTemplate transactionTemplate) {
         this.viajeRepository = viajeRepository;
         this.omnibusRepository = omnibusRepository;
-        this.pasajeRepository = pasajeRepository;
-        this.emailService = emailService;
+        this.transactionTemplate = transactionTemplate;
+        this.hiloTransiciones = new Thread(this::procesarTransiciones, "transiciones-viajes");
+        this.hiloTransiciones.setDaemon(true);
+    }
+
+    /**
+     * Programa la próxima transición del viaje una vez confirmada la transacción actual
+     * (o de inmediato si no hay una activa). Si la transacción se revierte, no se programa nada.
+     */
+    public void programarTrasCommit(Viaje viaje) {
+        Integer viajeId = viaje.getId();
+        EstadoViaje estado = viaje.getEstado();
+        LocalDateTime salida = viaje.getFechaHoraSalida();
+        LocalDateTime llegada = viaje.getFechaHoraLlegada();
+        if (viajeId == null) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    programar(viajeId, estado, salida, llegada);
+                }
+            });
+        } else {
+            programar(viajeId, estado, salida, llegada);
+        }
     }
 
-    @Scheduled(cron = "0 * * * * *")
-    @Transactional
-    public void actualizarEstadosDeViajes() {
-        LocalDateTime ahoraEnUruguay = LocalDateTime.now(ZONA_HORARIA_URUGUAY);
-        logger.info("Ejecutando tarea programada. Hora actual (Uruguay): {}", ahoraEnUruguay);
+    private void programar(Integer viajeId, EstadoViaje estado, LocalDateTime salida, LocalDateTime llegada) {
+        LocalDateTime proxima = proximaTransicion(estado, salida, llegada, LocalDateTime.now(ZONA_HORARIA_URUGUAY));
+        if (proxima == null) {
+            programadas.remove(viajeId);
+            return;
+        }
+        programar(viajeId, proxima.atZone(ZONA_HORARIA_URUGUAY).toInstant().toEpochMilli());
+    }
 
-        limpiarYFinalizarViajesAtascados(ahoraEnUruguay);
-        cerrarVentasYNotificar(ahoraEnUruguay);
-        actualizarViajesAEnCurso(ahoraEnUruguay);
-        actualizarViajesAFinalizado(ahoraEnUruguay);
+    private void programar(Integer viajeId, long instanteMillis) {
+        Long anterior = programadas.put(viajeId, instanteMillis);
+        if (anterior == null || anterior != instanteMillis) {
+            cola.put(new TransicionProgramada(viajeId, instanteMillis));
+        }
     }
 
-    private void limpiarYFinalizarViajesAtascados(LocalDateTime ahora) {
-        List<Viaje> viajesParaFinalizarDirecto = viajeRepository.findScheduledTripsToFinishDirectly(ahora);
-        if (!viajesParaFinalizarDirecto.isEmpty()) {
-            logger.warn("[!] LIMPIEZA: Se encontraron {} viajes atascados en PROGRAMADO que ya deberían haber finalizado.", viajesParaFinalizarDirecto.size());
-            for (Viaje viaje : viajesParaFinalizarDirecto) {
-                logger.warn("--> Finalizando directamente el viaje ID {}. Hora de llegada: {}", viaje.getId(), viaje.getFechaHoraLlegada());
-                finalizarViajeYLiberarBus(viaje);
-            }
-            viajeRepository.saveAll(viajesParaFinalizarDirecto);
+    // Mismos criterios que aplicarTransicion; null si el viaje ya no cambia de estado por tiempo
+    private static LocalDateTime proximaTransicion(EstadoViaje estado, LocalDateTime salida, LocalDateTime llegada, LocalDateTime ahora) {
+        if (estado == null || salida == null || llegada == null) {
+            return null;
         }
+        return switch (estado) {
+            // Si ya salió sin haber cerrado ventas (p. ej. el servidor estuvo caído), se finaliza a la llegada
+            case PROGRAMADO -> salida.isAfter(ahora) ? salida.minus(ANTICIPACION_CIERRE_VENTAS) : llegada;
+            case VENTAS_CERRADAS -> salida;
+            case EN_CURSO -> llegada;
+            default -> null;
+        };
     }
 
-    private void actualizarViajesAEnCurso(LocalDateTime ahora) {
-        // Buscamos viajes que ya pasaron su hora de salida y están en VENTAS_CERRADAS
-        List<Viaje> viajesParaIniciar = viajeRepository.findTripsToStart(ahora); // ¡Necesitas modificar esta consulta!
-        if (!viajesParaIniciar.isEmpty()) {
-            logger.info("[!] Se encontraron {} viajes para cambiar a EN_CURSO.", viajesParaIniciar.size());
-            for (Viaje viaje : viajesParaIniciar) {
-                logger.info("--> Cambiando viaje ID {} de {} a EN_CURSO. Hora de salida: {}", viaje.getId(), viaje.getEstado(), viaje.getFechaHoraSalida());
-                viaje.setEstado(EstadoViaje.EN_CURSO);
-            }
-            viajeRepository.saveAll(viajesParaIniciar);
+    @EventListener(ApplicationReadyEvent.class)
+    public void reconstruirDesdeBD() {
+        int cantidad = cargarDesdeBD();
+        logger.info("Cola de transiciones de viajes reconstruida con {} viajes activos.", cantidad);
+        hiloTransiciones.start();
+    }
+
+    @Scheduled(fixedDelay = MINUTOS_RESINCRONIZACION * 60_000L, initialDelay = MINUTOS_RESINCRONIZACION * 60_000L)
+    public void resincronizarDesdeBD() {
+        int cantidad = cargarDesdeBD();
+        logger.debug("Cola de transiciones de viajes resincronizada: {} viajes activos, {} programados.", cantidad, programadas.size());
+    }
+
+    private int cargarDesdeBD() {
+        List<Object[]> filas = viajeRepository.findDatosTransicionByEstadoIn(ESTADOS_ACTIVOS);
+        for (Object[] fila : filas) {
+            programar((Integer) fila[0], (EstadoViaje) fila[1], (LocalDateTime) fila[2], (LocalDateTime) fila[3]);
         }
+        return filas.size();
     }
 
-    private void actualizarViajesAFinalizado(LocalDateTime ahora) {
-        List<Viaje> viajesParaFinalizar = viajeRepository.findOngoingTripsToFinish(ahora);
-        if (!viajesParaFinalizar.isEmpty()) {
-            logger.info("[!] Se encontraron {} viajes para cambiar a FINALIZADO.", viajesParaFinalizar.size());
-            for (Viaje viaje : viajesParaFinalizar) {
-                logger.info("--> Finalizando viaje ID {}. Hora de llegada: {}", viaje.getId(), viaje.getFechaHoraLlegada());
-                finalizarViajeYLiberarBus(viaje);
+    // Hilo propio: ningún otro @Scheduled (ni los avisos que disparan los commits) atrasa las transiciones
+    private void procesarTransiciones() {
+        while (!Thread.currentThread().isInterrupted()) {
+            TransicionProgramada transicion;
+            try {
+                transicion = cola.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            // Si el viaje se reprogramó después de encolar esta entrada, se ignora
+            if (!programadas.remove(transicion.viajeId(), transicion.instanteMillis())) {
+                continue;
             }
-            viajeRepository.saveAll(viajesParaFinalizar);
+            Integer viajeId = transicion.viajeId();
+            try {
+                Viaje viaje = transactionTemplate.execute(status -> aplicarTransicion(viajeId));
+                if (viaje != null) {
+                    programar(viajeId, viaje.getEstado(), viaje.getFechaHoraSalida(), viaje.getFechaHoraLlegada());
+                }
+            } catch (Exception e) {
+                logger.error("Error al actualizar el estado del viaje ID {}: {}. Se reintenta en un minuto.", viajeId, e.getMessage(), e);
+                programar(viajeId, System.currentTimeMillis() + MILLIS_REINTENTO);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void cerrar() {
+        hiloTransiciones.interrupt();
+    }
+
+    /**
+     * Aplica al viaje la transición que le corresponda en este momento, según su estado actual en la BD.
+     * @return el viaje (con el estado resultante) para programar la siguiente, o null si ya no existe.
+     */
+    private Viaje aplicarTransicion(Integer viajeId) {
+        Viaje viaje = viajeRepository.findParaTransicion(viajeId).orElse(null);
+        if (viaje == null) {
+            return null;
         }
+        LocalDateTime ahora = LocalDateTime.now(ZONA_HORARIA_URUGUAY);
+        LocalDateTime salida = viaje.getFechaHoraSalida();
+        LocalDateTime llegada = viaje.getFechaHoraLlegada();
+        EstadoViaje estado = viaje.getEstado();
+
+        if (estado == EstadoViaje.PROGRAMADO && !llegada.isAfter(ahora)) {
+            logger.warn("--> Finalizando directamente el viaje ID {} atascado en PROGRAMADO. Hora de llegada: {}", viaje.getId(), llegada);
+            finalizarViajeYLiberarBus(viaje);
+        } else if (estado == EstadoViaje.PROGRAMADO && salida.isAfter(ahora)
+                && !salida.minus(ANTICIPACION_CIERRE_VENTAS).isAfter(ahora)) {
+            cerrarVentasYNotificar(viaje);
+        } else if (estado == EstadoViaje.VENTAS_CERRADAS && !salida.isAfter(ahora)) {
+            logger.info("--> Cambiando viaje ID {} de {} a EN_CURSO. Hora de salida: {}", viaje.getId(), estado, salida);
+            viaje.setEstado(EstadoViaje.EN_CURSO);
+            inventarioAsientosService.invalidar(viaje.getId());
+            indiceRutasService.actualizarTrasCommit(viaje);
+        } else if (estado == EstadoViaje.EN_CURSO && !llegada.isAfter(ahora)) {
+            logger.info("--> Finalizando viaje ID {}. Hora de llegada: {}", viaje.getId(), llegada);
+            finalizarViajeYLiberarBus(viaje);
+        } else {
+            // Todavía no corresponde (o el viaje se canceló/finalizó por otro lado)
+            return viaje;
+        }
+        return viajeRepository.save(viaje);
     }
 
     private void finalizarViajeYLiberarBus(Viaje viaje) {
         viaje.setEstado(EstadoViaje.FINALIZADO);
+        inventarioAsientosService.invalidar(viaje.getId());
+        indiceRutasService.actualizarTrasCommit(viaje);
         Omnibus busAsignadoEnViaje = viaje.getBusAsignado();
         if (busAsignadoEnViaje == null || busAsignadoEnViaje.getId() == null) {
             logger.warn("...[ERROR] El viaje ID {} que se está finalizando no tiene un bus asignado o el bus no tiene ID. No se puede actualizar el bus.", viaje.getId());
@@ -115,56 +245,30 @@ public class ViajeStatusScheduler {
         }
     }
 
-    private void cerrarVentasYNotificar(LocalDateTime ahora) {
-        // Busca viajes cuya hora de salida esté entre la hora actual y una hora en el futuro.
-        LocalDateTime limiteDeCierre = ahora.plusHours(1);
-        List<Viaje> viajesParaCerrarVentas = viajeRepository.findTripsToCloseSales(ahora, limiteDeCierre);
-
-        if (!viajesParaCerrarVentas.isEmpty()) {
-            logger.info("[!] Se encontraron {} viajes para CERRAR VENTAS y notificar a los pasajeros.", viajesParaCerrarVentas.size());
-
-            for (Viaje viaje : viajesParaCerrarVentas) {
-                logger.info("--> Cerrando ventas para el viaje ID {}. Hora de salida: {}", viaje.getId(), viaje.getFechaHoraSalida());
-                viaje.setEstado(EstadoViaje.VENTAS_CERRADAS);
-
-                // Obtiene todos los pasajes vendidos para este viaje específico.
-                List<Pasaje> pasajesDelViaje = pasajeRepository.findByDatosViajeAndEstado(viaje, EstadoPasaje.VENDIDO);
-                logger.info("...Encontrados {} pasajeros con pasajes VENDIDOS para notificar en el viaje ID {}.", pasajesDelViaje.size(), viaje.getId());
-
-                // Itera sobre cada pasaje para notificar a cada cliente.
-                for (Pasaje pasaje : pasajesDelViaje) {
-
-                    // 1. Enviar Email
-                    try {
-                        emailService.sendDepartureReminderEmail(pasaje);
-                    } catch (Exception e) {
-                        logger.error("...[ERROR] No se pudo enviar el recordatorio por EMAIL al cliente ID {} ({}) para el viaje ID {}. Causa: {}",
-                                pasaje.getCliente().getId(), pasaje.getCliente().getEmail(), viaje.getId(), e.getMessage());
-                    }
-
-                    // 2. Enviar Notificación Push (Firebase)
-                    try {
-                        firebaseNotificationService.sendVentasCerradasNotification(pasaje);
-                        logger.info("...Notificación PUSH enviada a cliente ID {} para viaje ID {}", pasaje.getCliente().getId(), viaje.getId());
-                    } catch (Exception e) {
-                        logger.error("...[ERROR] No se pudo enviar notificación PUSH al cliente ID {} ({}) para el viaje ID {}. Causa: {}",
-                                pasaje.getCliente().getId(), pasaje.getCliente().getEmail(), viaje.getId(), e.getMessage());
-                    }
-
-                    // 3. --- ¡NUEVA LÓGICA: CREAR NOTIFICACIÓN WEB! ---
-                    try {
-                        notificacionService.crearNotificacionRecordatorioViaje(pasaje);
-                        logger.info("...Notificación WEB (campanita) creada para cliente ID {} para viaje ID {}", pasaje.getCliente().getId(), viaje.getId());
-                    } catch (Exception e) {
-                        logger.error("...[ERROR] No se pudo crear la notificación WEB para el cliente ID {} para el viaje ID {}. Causa: {}",
-                                pasaje.getCliente().getId(), viaje.getId(), e.getMessage());
-                    }
-                }
+    private void cerrarVentasYNotificar(Viaje viaje) {
+        logger.info("--> Cerrando ventas para el viaje ID {}. Hora de salida: {}", viaje.getId(), viaje.getFechaHoraSalida());
+        viaje.setEstado(EstadoViaje.VENTAS_CERRADAS);
+        // Ya no se venden asientos para este viaje: liberamos su mapa en memoria.
+        inventarioAsientosService.invalidar(viaje.getId());
+        indiceRutasService.actualizarTrasCommit(viaje);
+
+        // Los avisos a los pasajeros salen recién cuando se confirma el cambio de estado
+        avisoCierreVentasService.avisarTrasCommit(viaje.getId());
+    }
+
+    private record TransicionProgramada(Integer viajeId, long instanteMillis) implements Delayed {
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(instanteMillis - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed otro) {
+            if (otro instanceof TransicionProgramada t) {
+                return Long.compare(instanteMillis, t.instanteMillis);
             }
-            // Guarda todos los viajes modificados en la base de datos en una sola operación.
-            viajeRepository.saveAll(viajesParaCerrarVentas);
-            logger.info("[!] Proceso de cierre de ventas y notificación finalizado.");
+            return Long.compare(getDelay(TimeUnit.MILLISECONDS), otro.getDelay(TimeUnit.MILLISECONDS));
         }
-        // Si no se encuentran viajes, el método simplemente termina sin hacer nada, lo cual es correcto.
     }
-}
\ No newline at end of file
+}
@@ -13,6 +13,7 @@ import jakarta.persistence.EntityNotFoundException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -31,6 +32,8 @@ import java.util.stream.Stream;
 public class pasajeService { // Corregido a PascalCase: PasajeService
 
     private static final Logger logger = LoggerFactory.getLogger(pasajeService.class); // Corregido a PascalCase
+    // Índice único parcial (migración V1) que impide dos pasajes activos en el mismo asiento de un viaje
+    private static final String INDICE_ASIENTO_ACTIVO = "ux_pasajes_asiento_activo";
 
     // --- DECLARACIÓN DE DEPENDENCIAS ---
     private final PasajeRepository pasajeRepository;
@@ -41,6 +44,8 @@ public class pasajeService { // Corregido a PascalCase: PasajeService
     private final AsyncService asyncService;
     private final NotificacionService notificacionService;
     private final EmailService emailService;
+    private final InventarioAsientosService inventarioAsientosService;
+    private final ExpiracionReservasService expiracionReservasService;
 
     // --- CONSTRUCTOR ÚNICO Y CORREGIDO ---
     // Spring usará este constructor para inyectar TODAS las dependencias necesarias.
@@ -52,7 +57,9 @@ public class pasajeService { // Corregido a PascalCase: PasajeService
                          PrecioService precioService,
                          AsyncService asyncService,
                          NotificacionService notificacionService,
-                         EmailService emailService) {
+                         EmailService emailService,
+                         InventarioAsientosService inventarioAsientosService,
+                         ExpiracionReservasService expiracionReservasService) {
         this.pasajeRepository = pasajeRepository;
         this.viajeRepository = viajeRepository;
         this.usuarioRepository = usuarioRepository;
@@ -61,6 +68,8 @@ public class pasajeService { // Corregido a PascalCase: PasajeService
         this.asyncService = asyncService;
         this.notificacionService = notificacionService;
         this.emailService = emailService;
+        this.inventarioAsientosService = inventarioAsientosService;
+        this.expiracionReservasService = expiracionReservasService;
     }
 
     @Transactional
@@ -89,6 +98,9 @@ public class pasajeService { // Corregido a PascalCase: PasajeService
             throw new IllegalArgumentException("Número de asiento " + requestDTO.getNumeroAsiento() + " es inválido.");
         }
 
+        // Rechazo temprano en memoria: si el asiento ya está tomado no llegamos a consultar la BD.
+        inventarioAsientosService.reclamarAsientosEnTransaccion(viaje, List.of(requestDTO.getNumeroAsiento()));
+
         // --- CORRECCIÓN DE LA LÓGICA DE BÚSQUEDA ---
         List<EstadoPasaje> estadosActivos = List.of(EstadoPasaje.VENDIDO, EstadoPasaje.RESERVADO);
 
@@ -114,10 +126,16 @@ public class pasajeService { // Corregido a PascalCase: PasajeService
         // Asumiendo que `CompraPasajeRequestDTO` tiene el campo `paypalTransactionId`.
         // nuevoPasaje.setPaypalTransactionId(requestDTO.getPaypalTransactionId());
 
-        viaje.setAsientosDisponibles(viaje.getAsientosDisponibles() - 1);
-        viajeRepository.save(viaje);
+        if (viajeRepository.decrementarAsientosDisponibles(viaje.getId(), 1) == 0) {
+            throw new IllegalStateException("No hay asientos disponibles para el viaje ID: " + viaje.getId());
+        }
 
-        Pasaje pasajeGuardado = pasajeRepository.save(nuevoPasaje);
+        Pasaje pasajeGuardado;
+        try {
+            pasajeGuardado = pasajeRepository.save(nuevoPasaje);
+        } catch (DataIntegrityViolationException e) {
+            throw traducirAsientoOcupado(e, "El asiento " + requestDTO.getNumeroAsiento() + " ya no está disponible.");
+        }
         logger.info("Pasaje ID {} creado exitosamente para viaje ID {} asiento {}, estado: VENDIDO",
                 pasajeGuardado.getId(), viaje.getId(), pasajeGuardado.getNumeroAsiento());
 
@@ -132,10 +150,10 @@ public class pasajeService { // Corregido a PascalCase: PasajeService
             logger.warn("Intento de obtener asientos de viaje inexistente ID: {}", viajeId);
             throw new EntityNotFoundException("Viaje no encontrado con ID: " + viajeId);
         }
-        List<Pasaje> pasajesDelViaje = pasajeRepository.findByDatosViajeId(viajeId);
-        return pasajesDelViaje.stream()
-                .filter(p -> p.getEstado() != EstadoPasaje.CANCELADO)
-                .map(Pasaje::getNumeroAsiento)
+        // Solo los números de asiento, sin materializar pasajes
+        List<Integer> asientos = pasajeRepository.findNumerosAsientoByViajeIdAndEstadoIn(viajeId,
+                EnumSet.complementOf(EnumSet.of(EstadoPasaje.CANCELADO)));
+        return asientos.stream()
                 .distinct()
                 .collect(Collectors.toList());
     }
@@ -147,15 +165,14 @@ public class pasajeService { // Corregido a PascalCase: PasajeService
             logger.warn("Cliente no encontrado con ID: {} al buscar historial de pasajes.", clienteId);
             throw new EntityNotFoundException("Cliente no encontrado con ID: " + clienteId);
         }
-        List<Pasaje> pasajes = pasajeRepository.findByClienteId(clienteId);
+        // Proyección directa al DTO: una sola consulta, sin cargar viaje/cliente por cada pasaje
+        List<PasajeResponseDTO> pasajes = pasajeRepository.findResponseByClienteId(clienteId);
         if (pasajes.isEmpty()) {
             logger.info("No se encontraron pasajes para el cliente ID: {}", clienteId);
             return Collections.emptyList();
         }
         logger.info("Encontrados {} pasajes para el cliente ID: {}", pasajes.size(), clienteId);
-        return pasajes.stream()
-                .map(this::convertirAPasajeResponseDTO)
-                .collect(Collectors.toList());
+        return pasajes;
     }
 
     // =================================================================================
@@ -237,17 +254,16 @@ public class pasajeService { // Corregido a PascalCase: PasajeService
             logger.warn("Viaje no encontrado con ID: {} al buscar sus pasajes.", viajeId);
             throw new EntityNotFoundException("Viaje no encontrado con ID: " + viajeId);
         }
-        List<Pasaje> pasajesDelViaje = pasajeRepository.findByDatosViajeId(viajeId);
+        List<PasajeResponseDTO> pasajesDelViaje = pasajeRepository.findResponseByViajeId(viajeId);
         if (pasajesDelViaje.isEmpty()) {
             logger.info("No se encontraron pasajes para el viaje ID: {}", viajeId);
             return Collections.emptyList();
         }
-        Stream<Pasaje> pasajesStream = pasajesDelViaje.stream();
+        Stream<PasajeResponseDTO> pasajesStream = pasajesDelViaje.stream();
         if (clienteNombreOpt.isPresent() && !clienteNombreOpt.get().isBlank()) {
             String nombreFiltro = clienteNombreOpt.get().toLowerCase();
-            pasajesStream = pasajesStream.filter(p -> p.getCliente() != null &&
-                    p.getCliente().getNombreCompleto() != null &&
-                    p.getCliente().getNombreCompleto().toLowerCase().contains(nombreFiltro));
+            pasajesStream = pasajesStream.filter(p -> p.getClienteNombre() != null &&
+                    p.getClienteNombre().toLowerCase().contains(nombreFiltro));
         }
         if (numeroAsientoOpt.isPresent()) {
             Integer asientoFiltro = numeroAsientoOpt.get();
@@ -262,21 +278,21 @@ public class pasajeService { // Corregido a PascalCase: PasajeService
                 logger.warn("Estado de pasaje inválido para filtro: '{}'. Se ignorará el filtro de estado.", estadoPasajeOpt.get());
             }
         }
-        List<Pasaje> pasajesFiltrados = pasajesStream.collect(Collectors.toList());
+        List<PasajeResponseDTO> pasajesFiltrados = pasajesStream.collect(Collectors.toList());
         if (sortByOpt.isPresent() && !sortByOpt.get().isBlank()) {
             String sortBy = sortByOpt.get();
             Sort.Direction direction = sortDirOpt.map(dir -> "desc".equalsIgnoreCase(dir) ? Sort.Direction.DESC : Sort.Direction.ASC)
                     .orElse(Sort.Direction.ASC);
-            Comparator<Pasaje> comparator = null;
+            Comparator<PasajeResponseDTO> comparator = null;
             switch (sortBy.toLowerCase()) {
                 case "clientenombre":
-                    comparator = Comparator.comparing(p -> p.getCliente() != null ? p.getCliente().getNombreCompleto().toLowerCase() : "", Comparator.nullsLast(String::compareTo));
+                    comparator = Comparator.comparing(p -> p.getClienteNombre() != null ? p.getClienteNombre().toLowerCase() : "", Comparator.nullsLast(String::compareTo));
                     break;
                 case "numeroasiento":
-                    comparator = Comparator.comparing(Pasaje::getNumeroAsiento, Comparator.nullsLast(Integer::compareTo));
+                    comparator = Comparator.comparing(PasajeResponseDTO::getNumeroAsiento, Comparator.nullsLast(Integer::compareTo));
                     break;
                 case "precio":
-                    comparator = Comparator.comparing(Pasaje::getPrecio, Comparator.nullsLast(Double::compareTo));
+                    comparator = Comparator.comparing(PasajeResponseDTO::getPrecio, Comparator.nullsLast(Double::compareTo));
                     break;
                 case "estadopasaje":
                     comparator = Comparator.comparing(p -> p.getEstado() != null ? p.getEstado().name() : "", Comparator.nullsLast(String::compareTo));
@@ -292,9 +308,7 @@ public class pasajeService { // Corregido a PascalCase: PasajeService
             }
         }
         logger.info("Encontrados {} pasajes para el viaje ID {} después de filtros y ordenamiento.", pasajesFiltrados.size(), viajeId);
-        return pasajesFiltrados.stream()
-                .map(this::convertirAPasajeResponseDTO)
-                .collect(Collectors.toList());
+        return pasajesFiltrados;
     }
 
     public List<PasajeStatsDTO> obtenerDatosParaEstadisticas() {
@@ -323,11 +337,18 @@ public class pasajeService { // Corregido a PascalCase: PasajeService
                 .orElseThrow(() -> new EntityNotFoundException("Viaje no encontrado con ID: " + requestDTO.getViajeId()));
 
         List<Pasaje> pasajesAConfirmar = new ArrayList<>();
-        List<EstadoPasaje> estadosActivos = List.of(EstadoPasaje.VENDIDO, EstadoPasaje.RESERVADO);
+
+        // Una sola consulta para todas las reservas del pedido, bloqueadas hasta confirmar la compra
+        Map<Integer, Pasaje> reservasPorAsiento = pasajeRepository
+                .findParaActualizarByDatosViajeAndNumeroAsientoInAndEstado(viaje, requestDTO.getNumerosAsiento(), EstadoPasaje.RESERVADO)
+                .stream()
+                .collect(Collectors.toMap(Pasaje::getNumeroAsiento, p -> p, (a, b) -> a));
 
         for (Integer numeroAsiento : requestDTO.getNumerosAsiento()) {
-            Pasaje pasaje = pasajeRepository.findByDatosViajeAndNumeroAsientoAndEstado(viaje, numeroAsiento, EstadoPasaje.RESERVADO)
-                    .orElseThrow(() -> new IllegalStateException("La reserva para el asiento " + numeroAsiento + " no fue encontrada o expiró."));
+            Pasaje pasaje = reservasPorAsiento.get(numeroAsiento);
+            if (pasaje == null) {
+                throw new IllegalStateException("La reserva para el asiento " + numeroAsiento + " no fue encontrada o expiró.");
+            }
 
             // --- VALIDACIONES DE CONFIRMACIÓN ---
             if (pasaje.getEstado() != EstadoPasaje.RESERVADO) {
@@ -348,6 +369,7 @@ public class pasajeService { // Corregido a PascalCase: PasajeService
 
         List<Pasaje> pasajesGuardados = pasajeRepository.saveAll(pasajesAConfirmar);
         logger.info("¡Éxito! {} pasajes confirmados y movidos a VENDIDO.", pasajesGuardados.size());
+        inventarioAsientosService.notificarConfirmacionTrasCommit(viaje.getId(), requestDTO.getNumerosAsiento());
 
         return pasajesGuardados.stream()
                 .map(this::convertirAPasajeResponseDTO)
@@ -388,14 +410,16 @@ public class pasajeService { // Corregido a PascalCase: PasajeService
         // --- FIN: LÓGICA DE VALIDACIÓN DEL LÍMITE DE RESERVAS ---
 
 
-        // 2. Validar que los asientos no estén ya ocupados (SIN CAMBIOS)
+        // 2. Reclamar los asientos en el inventario en memoria (rechaza conflictos sin ir a la BD)
+        //    y luego validar contra la BD, que sigue siendo la fuente de verdad.
+        inventarioAsientosService.reclamarAsientosEnTransaccion(viaje, requestDTO.getNumerosAsiento());
+
         List<EstadoPasaje> estadosActivos = List.of(EstadoPasaje.VENDIDO, EstadoPasaje.RESERVADO);
 
-        for (Integer numeroAsiento : requestDTO.getNumerosAsiento()) {
-            pasajeRepository.findByDatosViajeAndNumeroAsientoAndEstadoIn(viaje, numeroAsiento, estadosActivos)
-                    .ifPresent(p -> {
-                        throw new IllegalStateException("El asiento " + numeroAsiento + " ya no está disponible.");
-                    });
+        // Una sola consulta valida todo el grupo de asientos
+        List<Pasaje> ocupados = pasajeRepository.findByDatosViajeAndNumeroAsientoInAndEstadoIn(viaje, requestDTO.getNumerosAsiento(), estadosActivos);
+        if (!ocupados.isEmpty()) {
+            throw new IllegalStateException("El asiento " + ocupados.get(0).getNumeroAsiento() + " ya no está disponible.");
         }
 
         // 3. Calcular el precio final usando el PrecioService (SIN CAMBIOS)
@@ -417,11 +441,18 @@ public class pasajeService { // Corregido a PascalCase: PasajeService
             pasajesReservados.add(pasaje);
         }
 
-        // 5. Actualizar el contador de asientos del viaje y guardar los pasajes (SIN CAMBIOS)
-        viaje.setAsientosDisponibles(viaje.getAsientosDisponibles() - requestDTO.getNumerosAsiento().size());
-        viajeRepository.save(viaje);
+        // 5. Descontar los asientos con un UPDATE condicional atómico y guardar los pasajes
+        if (viajeRepository.decrementarAsientosDisponibles(viaje.getId(), requestDTO.getNumerosAsiento().size()) == 0) {
+            throw new IllegalStateException("No hay suficientes asientos disponibles para el viaje ID: " + viaje.getId());
+        }
 
-        List<Pasaje> pasajesGuardados = pasajeRepository.saveAll(pasajesReservados);
+        List<Pasaje> pasajesGuardados;
+        try {
+            pasajesGuardados = pasajeRepository.saveAll(pasajesReservados);
+        } catch (DataIntegrityViolationException e) {
+            throw traducirAsientoOcupado(e, "Alguno de los asientos " + requestDTO.getNumerosAsiento() + " ya no está disponible.");
+        }
+        expiracionReservasService.programarTrasCommit(pasajesGuardados);
 
         // 6. Devolver los DTOs (SIN CAMBIOS)
         return pasajesGuardados.stream()
@@ -480,8 +511,8 @@ public class pasajeService { // Corregido a PascalCase: PasajeService
         pasaje.setPaypalRefundId(refundId);
         pasajeRepository.save(pasaje);
 
-        viaje.setAsientosDisponibles(viaje.getAsientosDisponibles() + 1);
-        viajeRepository.save(viaje);
+        viajeRepository.incrementarAsientosDisponibles(viaje.getId(), 1);
+        inventarioAsientosService.liberarAsientosTrasCommit(viaje.getId(), List.of(pasaje.getNumeroAsiento()));
 
         logger.info("Devolución exitosa para pasaje ID {}. Reembolsado: ${}. Nuevo estado: {}", pasajeId, montoAReembolsar, pasaje.getEstado());
 
@@ -517,13 +548,24 @@ public class pasajeService { // Corregido a PascalCase: PasajeService
     @Transactional(readOnly = true)
     public PasajeResponseDTO obtenerPasajePorId(Integer pasajeId) {
         logger.info("Buscando detalles del pasaje con ID: {}", pasajeId);
-        Pasaje pasaje = pasajeRepository.findById(pasajeId)
+        // Proyección directa al DTO en una sola consulta
+        return pasajeRepository.findResponseById(pasajeId)
                 .orElseThrow(() -> {
                     logger.warn("No se encontró el pasaje con ID: {}", pasajeId);
                     return new EntityNotFoundException("Pasaje no encontrado con ID: " + pasajeId);
                 });
+    }
 
-        // Reutilizamos el método de conversión que ya tienes
-        return convertirAPasajeResponseDTO(pasaje);
+    /**
+     * Si la violación de integridad es la del índice único de asiento activo (otra instancia o solicitud
+     * ocupó el asiento entre la validación y el INSERT), la convierte en el error habitual de asiento no disponible.
+     */
+    private RuntimeException traducirAsientoOcupado(DataIntegrityViolationException e, String mensaje) {
+        Throwable causa = e.getMostSpecificCause();
+        if (causa.getMessage() != null && causa.getMessage().contains(INDICE_ASIENTO_ACTIVO)) {
+            logger.warn("Conflicto de asiento detectado por la base de datos: {}", mensaje);
+            return new IllegalStateException(mensaje);
+        }
+        return e;
     }
-}
\ No newline at end of file
+}
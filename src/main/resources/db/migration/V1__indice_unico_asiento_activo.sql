@@ -0,0 +1,32 @@
+-- Un asiento solo puede tener un pasaje activo (VENDIDO o RESERVADO) por viaje.
+-- Es la garantía final contra la doble venta, incluso con varias instancias del backend.
+
+-- Antes de crear el índice se eliminan las reservas temporales duplicadas que pudieran existir
+-- (se conserva el pasaje VENDIDO o, si no hay, la reserva más antigua) y se devuelven sus asientos al viaje.
+WITH duplicadas AS (
+    SELECT id
+    FROM (
+        SELECT id,
+               ROW_NUMBER() OVER (
+                   PARTITION BY viaje_id, numero_asiento
+                   ORDER BY CASE WHEN estado = 'VENDIDO' THEN 0 ELSE 1 END, id
+               ) AS orden
+        FROM pasajes
+        WHERE estado IN ('VENDIDO', 'RESERVADO')
+    ) t
+    WHERE t.orden > 1
+),
+eliminadas AS (
+    DELETE FROM pasajes p
+    USING duplicadas d
+    WHERE p.id = d.id AND p.estado = 'RESERVADO'
+    RETURNING p.viaje_id
+)
+UPDATE viaje v
+SET asientos_disponibles = v.asientos_disponibles + e.cantidad
+FROM (SELECT viaje_id, COUNT(*) AS cantidad FROM eliminadas GROUP BY viaje_id) e
+WHERE v.id = e.viaje_id;
+
+CREATE UNIQUE INDEX IF NOT EXISTS ux_pasajes_asiento_activo
+    ON pasajes (viaje_id, numero_asiento)
+    WHERE estado IN ('VENDIDO', 'RESERVADO');
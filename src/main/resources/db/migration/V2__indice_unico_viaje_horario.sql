@@ -0,0 +1,5 @@
+-- Un horario recurrente genera como mucho un viaje por fecha y hora de salida.
+-- Es la garantía final de que la generación de viajes es idempotente aunque se ejecute dos veces.
+CREATE UNIQUE INDEX IF NOT EXISTS ux_viaje_horario_salida
+    ON viaje (horario_id, fecha_hora_salida)
+    WHERE horario_id IS NOT NULL;
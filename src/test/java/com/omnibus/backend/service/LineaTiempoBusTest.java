@@ -0,0 +1,96 @@
+package com.omnibus.backend.service;
+
+import com.omnibus.backend.model.EstadoViaje;
+import com.omnibus.backend.model.Localidad;
+import com.omnibus.backend.model.Omnibus;
+import com.omnibus.backend.model.Viaje;
+import com.omnibus.backend.service.IndiceRutasService.ViajeIndexado;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LineaTiempoBusTest {
+
+    private static final LocalDateTime DIA = LocalDateTime.of(2030, 3, 4, 0, 0);
+
+    @Test
+    void viajesQueSoloSeTocanEnUnExtremoNoSeSuperponen() {
+        LineaTiempoBus linea = LineaTiempoBus.de(List.of(viaje(1, 10, 12, EstadoViaje.PROGRAMADO)));
+
+        assertNull(linea.solapadoCon(hora(12), hora(14)));
+        assertNull(linea.solapadoCon(hora(8), hora(10)));
+        assertEquals(1, linea.solapadoCon(hora(11), hora(13)).id);
+        assertEquals(1, linea.solapadoCon(hora(9), hora(15)).id);
+    }
+
+    @Test
+    void unViajeLargoQueEmpiezaAntesTapaAlIntervalo() {
+        // El viaje 2 sale después pero llega antes que el 1: el solapamiento lo decide la llegada máxima
+        LineaTiempoBus linea = LineaTiempoBus.de(List.of(
+                viaje(1, 8, 20, EstadoViaje.PROGRAMADO),
+                viaje(2, 9, 10, EstadoViaje.PROGRAMADO)));
+
+        assertEquals(1, linea.solapadoCon(hora(12), hora(13)).id);
+        assertEquals(1, linea.ultimoEnLlegarAntesDe(hora(22)).id);
+        assertNull(linea.ultimoEnLlegarAntesDe(hora(8)));
+    }
+
+    @Test
+    void proximoProgramadoIncluyeLaSalidaExactaYSalteaLosEnCurso() {
+        LineaTiempoBus linea = LineaTiempoBus.de(List.of(
+                viaje(1, 14, 16, EstadoViaje.EN_CURSO),
+                viaje(2, 18, 20, EstadoViaje.PROGRAMADO)));
+
+        assertEquals(2, linea.proximoProgramadoDesde(hora(14)).id);
+        assertEquals(2, linea.proximoProgramadoDesde(hora(18)).id);
+        assertNull(linea.proximoProgramadoDesde(hora(19)));
+    }
+
+    @Test
+    void conYSinDevuelvenLineasNuevasOrdenadas() {
+        LineaTiempoBus original = LineaTiempoBus.de(List.of(
+                viaje(1, 6, 8, EstadoViaje.PROGRAMADO),
+                viaje(3, 18, 20, EstadoViaje.PROGRAMADO)));
+
+        LineaTiempoBus conIntermedio = original.con(viaje(2, 12, 14, EstadoViaje.PROGRAMADO));
+        assertEquals(2, conIntermedio.proximoProgramadoDesde(hora(9)).id);
+        assertNull(original.solapadoCon(hora(12), hora(14)));
+
+        LineaTiempoBus sinNinguno = conIntermedio.sin(1).sin(2).sin(3);
+        assertTrue(sinNinguno.estaVacia());
+        assertEquals(2, conIntermedio.solapadoCon(hora(13), hora(15)).id);
+    }
+
+    private static LocalDateTime hora(int hora) {
+        return DIA.plusHours(hora);
+    }
+
+    private static ViajeIndexado viaje(int id, int horaSalida, int horaLlegada, EstadoViaje estado) {
+        Localidad origen = new Localidad();
+        origen.setId(1L);
+        origen.setNombre("Montevideo");
+        Localidad destino = new Localidad();
+        destino.setId(2L);
+        destino.setNombre("Salto");
+        Omnibus bus = new Omnibus();
+        bus.setId(7L);
+        bus.setMatricula("SAB1234");
+        bus.setCapacidadAsientos(40);
+        return new ViajeIndexado(Viaje.builder()
+                .id(id)
+                .fechaHoraSalida(hora(horaSalida))
+                .fechaHoraLlegada(hora(horaLlegada))
+                .origen(origen)
+                .destino(destino)
+                .busAsignado(bus)
+                .asientosDisponibles(40)
+                .estado(estado)
+                .precio(500.0)
+                .build());
+    }
+}
@@ -0,0 +1,94 @@
+package com.omnibus.backend.service;
+
+import com.omnibus.backend.service.PlanificadorLoteViajes.Tramo;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class PlanificadorLoteViajesTest {
+
+    private static final LocalDateTime DIA = LocalDateTime.of(2030, 3, 4, 0, 0);
+    private static final Duration BUFFER = Duration.ofHours(2);
+
+    @Test
+    void encadenaCuandoLaSalidaCoincideJustoConElFinDelBuffer() {
+        List<Tramo> tramos = List.of(
+                tramo(8, 0, 10, 0, 1L, 2L),
+                tramo(12, 0, 14, 0, 2L, 1L));
+
+        assertEquals(List.of(List.of(0, 1)), PlanificadorLoteViajes.cadenasMinimas(tramos, BUFFER));
+    }
+
+    @Test
+    void noEncadenaSiFaltaUnMinutoDeBuffer() {
+        List<Tramo> tramos = List.of(
+                tramo(8, 0, 10, 0, 1L, 2L),
+                tramo(11, 59, 14, 0, 2L, 1L));
+
+        assertEquals(List.of(List.of(0), List.of(1)), PlanificadorLoteViajes.cadenasMinimas(tramos, BUFFER));
+    }
+
+    @Test
+    void noEncadenaSiElSiguienteSaleDeOtraLocalidad() {
+        List<Tramo> tramos = List.of(
+                tramo(8, 0, 10, 0, 1L, 2L),
+                tramo(18, 0, 20, 0, 3L, 1L));
+
+        assertEquals(List.of(List.of(0), List.of(1)), PlanificadorLoteViajes.cadenasMinimas(tramos, BUFFER));
+    }
+
+    @Test
+    void usaLaMenorCantidadDeCadenasOrdenadasPorSalida() {
+        // Desde la localidad 2 salen dos viajes a la vez: solo uno puede seguir al tramo 1
+        List<Tramo> tramos = List.of(
+                tramo(14, 0, 16, 0, 2L, 3L),
+                tramo(6, 0, 8, 0, 1L, 2L),
+                tramo(14, 0, 16, 0, 2L, 1L),
+                tramo(18, 0, 20, 0, 1L, 2L));
+
+        List<List<Integer>> cadenas = PlanificadorLoteViajes.cadenasMinimas(tramos, BUFFER);
+
+        assertEquals(2, cadenas.size());
+        assertEquals(1, cadenas.get(0).get(0));
+        assertEquals(4, cadenas.stream().mapToInt(List::size).sum());
+    }
+
+    @Test
+    void conMasCadenasQueBusesQuedanCadenasSinAsignar() {
+        List<List<Integer>> adyacencia = List.of(List.of(0, 1), List.of(0, 1), List.of(0, 1));
+
+        int[] pareja = PlanificadorLoteViajes.emparejamientoMaximo(3, 2, adyacencia);
+
+        assertEquals(1, Arrays.stream(pareja).filter(b -> b < 0).count());
+        int[] asignados = Arrays.stream(pareja).filter(b -> b >= 0).toArray();
+        assertNotEquals(asignados[0], asignados[1]);
+    }
+
+    @Test
+    void reasignaParaMaximizarLasCadenasCubiertas() {
+        // La cadena 0 podría tomar el bus 0, pero es el único que sirve a la cadena 1
+        List<List<Integer>> adyacencia = List.of(List.of(0, 1), List.of(0));
+
+        assertArrayEquals(new int[]{1, 0}, PlanificadorLoteViajes.emparejamientoMaximo(2, 2, adyacencia));
+    }
+
+    @Test
+    void sinBusesPosiblesNingunaCadenaSeAsigna() {
+        List<List<Integer>> adyacencia = List.of(List.of(), List.of());
+
+        assertArrayEquals(new int[]{-1, -1}, PlanificadorLoteViajes.emparejamientoMaximo(2, 0, adyacencia));
+    }
+
+    private static Tramo tramo(int horaSalida, int minutoSalida, int horaLlegada, int minutoLlegada,
+                               Long origenId, Long destinoId) {
+        return new Tramo(DIA.plusHours(horaSalida).plusMinutes(minutoSalida),
+                DIA.plusHours(horaLlegada).plusMinutes(minutoLlegada), origenId, destinoId);
+    }
+}